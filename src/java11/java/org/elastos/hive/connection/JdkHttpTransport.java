@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.utils.ExecutorUtil;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Pipe;
+import okio.Timeout;
+
+/**
+ * Transport running the calls on a JDK 11+ {@link HttpClient}.
+ *
+ * The network exchanges go through {@link HttpClient#sendAsync}, so they are
+ * driven by the selector thread of the JDK client and share its HTTP/2
+ * connections. The SDK interceptors of the OkHttp client (authorization
+ * header, replay after 401, logging) still run around each call.
+ *
+ * An enqueued call completes its callback when the exchange completes, no
+ * thread waits for the node while every interceptor of the client is an
+ * {@link AsyncInterceptor}. Otherwise the interceptors run on the executor of
+ * the JDK client or the SDK default executor, blocking it for the exchange,
+ * as the executed calls do.
+ *
+ * The connect timeout and the protocol are the ones of the JDK client, the
+ * call (or read) timeout of the API group bounds each exchange.
+ *
+ * A canceled call fails at once. Cancelling the future of {@link HttpClient#sendAsync}
+ * only aborts the exchange from JDK 16, so on the former releases a streamed
+ * request body fails its next read and a response arriving after the
+ * cancellation is closed, which releases its connection.
+ */
+public class JdkHttpTransport implements HttpTransport {
+    private static final boolean CANCEL_ABORTS_EXCHANGE = Runtime.version().feature() >= 16;
+
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade", "keep-alive", "transfer-encoding"));
+
+    private final HttpClient httpClient;
+    private final Executor executor;
+
+    public JdkHttpTransport() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build());
+    }
+
+    public JdkHttpTransport(HttpClient httpClient) {
+        this.httpClient = httpClient;
+        this.executor = httpClient.executor().orElseGet(ExecutorUtil::defaultExecutor);
+    }
+
+    @Override
+    public Call.Factory createCallFactory(OkHttpClient client) {
+        return request -> new JdkCall(client, request);
+    }
+
+    private final class JdkCall implements Call {
+        private final OkHttpClient client;
+        private final Request originalRequest;
+        private final Timeout timeout = new Timeout();
+        private boolean executed;
+        private volatile boolean canceled;
+        private volatile CompletableFuture<?> exchange;
+        private volatile CompletableFuture<Response> result;
+
+        JdkCall(OkHttpClient client, Request request) {
+            this.client = client;
+            this.originalRequest = request;
+            if (client.callTimeoutMillis() > 0)
+                this.timeout.timeout(client.callTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public Request request() {
+            return originalRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            return runInterceptors();
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            markExecuted();
+
+            List<Interceptor> interceptors = interceptors();
+            if (!interceptors.stream().allMatch(interceptor -> interceptor instanceof AsyncInterceptor)) {
+                // Some interceptor only has a blocking form, the chain runs on the executor.
+                executor.execute(() -> {
+                    Response response;
+                    try {
+                        response = new InterceptorChain(interceptors, 0, originalRequest).proceed(originalRequest);
+                    } catch (IOException e) {
+                        responseCallback.onFailure(this, e);
+                        return;
+                    }
+                    deliver(responseCallback, response);
+                });
+                return;
+            }
+
+            new AsyncInterceptorChain(interceptors, 0, originalRequest).proceedAsync(originalRequest)
+                    .whenComplete((response, error) -> {
+                        if (error != null)
+                            responseCallback.onFailure(this, AsyncInterceptor.toIOException(error));
+                        else
+                            deliver(responseCallback, response);
+                    });
+        }
+
+        private void deliver(Callback responseCallback, Response response) {
+            try {
+                responseCallback.onResponse(this, response);
+            } catch (IOException e) {
+                responseCallback.onFailure(this, e);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            cancelExchange();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            synchronized (this) {
+                return executed;
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public Timeout timeout() {
+            return timeout;
+        }
+
+        @Override
+        public Call clone() {
+            return new JdkCall(client, originalRequest);
+        }
+
+        private synchronized void markExecuted() {
+            if (executed)
+                throw new IllegalStateException("Already Executed");
+            executed = true;
+        }
+
+        private List<Interceptor> interceptors() {
+            List<Interceptor> interceptors = new ArrayList<>(client.interceptors());
+            interceptors.addAll(client.networkInterceptors());
+            return interceptors;
+        }
+
+        private Response runInterceptors() throws IOException {
+            return new InterceptorChain(interceptors(), 0, originalRequest).proceed(originalRequest);
+        }
+
+        private Response send(Request request) throws IOException {
+            CompletableFuture<Response> future = sendAsync(request);
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                cancelExchange();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted");
+            } catch (ExecutionException e) {
+                throw AsyncInterceptor.toIOException(e);
+            }
+        }
+
+        private CompletableFuture<Response> sendAsync(Request request) {
+            if (canceled)
+                return AsyncInterceptor.failed(new IOException("Canceled"));
+
+            HttpRequest httpRequest;
+            try {
+                httpRequest = toHttpRequest(request);
+            } catch (IOException e) {
+                return AsyncInterceptor.failed(e);
+            }
+
+            // The result is apart from the exchange, so a canceled call completes even if its exchange runs on.
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            CompletableFuture<HttpResponse<InputStream>> sent = httpClient.sendAsync(httpRequest,
+                    HttpResponse.BodyHandlers.ofInputStream());
+            sent.whenComplete((httpResponse, error) -> {
+                if (error != null) {
+                    future.completeExceptionally(AsyncInterceptor.toIOException(error));
+                } else if (canceled) {
+                    closeQuietly(httpResponse.body());
+                    future.completeExceptionally(new IOException("Canceled"));
+                } else {
+                    try {
+                        Response response = toResponse(request, httpResponse);
+                        if (!future.complete(response))
+                            response.close();
+                    } catch (RuntimeException e) {
+                        closeQuietly(httpResponse.body());
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+
+            exchange = sent;
+            result = future;
+            if (canceled)
+                cancelExchange();
+            return future;
+        }
+
+        private void cancelExchange() {
+            CompletableFuture<Response> future = result;
+            if (future != null)
+                future.completeExceptionally(new IOException("Canceled"));
+
+            CompletableFuture<?> sent = exchange;
+            if (sent != null && CANCEL_ABORTS_EXCHANGE)
+                sent.cancel(true);
+        }
+
+        private void closeQuietly(InputStream in) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // The connection is released anyway.
+            }
+        }
+
+        private HttpRequest toHttpRequest(Request request) throws IOException {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(request.url().uri());
+
+            long responseTimeout = client.callTimeoutMillis() > 0
+                    ? client.callTimeoutMillis() : client.readTimeoutMillis();
+            if (responseTimeout > 0)
+                builder.timeout(Duration.ofMillis(responseTimeout));
+
+            Headers headers = request.headers();
+            for (int i = 0; i < headers.size(); i++) {
+                if (!RESTRICTED_HEADERS.contains(headers.name(i).toLowerCase(Locale.US)))
+                    builder.header(headers.name(i), headers.value(i));
+            }
+
+            RequestBody body = request.body();
+            if (body == null) {
+                builder.method(request.method(), HttpRequest.BodyPublishers.noBody());
+                return builder.build();
+            }
+
+            MediaType contentType = body.contentType();
+            if (contentType != null && request.header("Content-Type") == null)
+                builder.header("Content-Type", contentType.toString());
+
+            builder.method(request.method(), toBodyPublisher(body));
+            return builder.build();
+        }
+
+        private HttpRequest.BodyPublisher toBodyPublisher(RequestBody body) throws IOException {
+            if (body.contentLength() >= 0) {
+                Buffer buffer = new Buffer();
+                body.writeTo(buffer);
+                return HttpRequest.BodyPublishers.ofByteArray(buffer.readByteArray());
+            }
+
+            // Streaming body of unknown length, written on the executor while the JDK client reads it.
+            Pipe pipe = new Pipe(64 * 1024);
+            executor.execute(() -> {
+                try (BufferedSink sink = Okio.buffer(pipe.sink())) {
+                    body.writeTo(sink);
+                } catch (IOException e) {
+                    // The exchange fails on the truncated body.
+                }
+            });
+            return HttpRequest.BodyPublishers.ofInputStream(() -> new FilterInputStream(Okio.buffer(pipe.source()).inputStream()) {
+                // A body cut short by a cancellation must fail the exchange rather than end the request.
+                @Override
+                public int read() throws IOException {
+                    checkCanceled();
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    checkCanceled();
+                    return super.read(b, off, len);
+                }
+            });
+        }
+
+        private void checkCanceled() throws IOException {
+            if (canceled)
+                throw new IOException("Canceled");
+        }
+
+        private Response toResponse(Request request, HttpResponse<InputStream> httpResponse) {
+            Headers.Builder headersBuilder = new Headers.Builder();
+            for (Map.Entry<String, List<String>> header : httpResponse.headers().map().entrySet()) {
+                if (header.getKey().startsWith(":"))
+                    continue;
+                for (String value : header.getValue())
+                    headersBuilder.addUnsafeNonAscii(header.getKey(), value);
+            }
+            Headers headers = headersBuilder.build();
+
+            BufferedSource source = Okio.buffer(Okio.source(httpResponse.body()));
+            long contentLength = parseLength(headers.get("Content-Length"));
+            if ("gzip".equalsIgnoreCase(headers.get("Content-Encoding"))) {
+                source = Okio.buffer(new GzipSource(source));
+                headers = headers.newBuilder().removeAll("Content-Encoding").removeAll("Content-Length").build();
+                contentLength = -1;
+            }
+
+            String contentType = headers.get("Content-Type");
+            ResponseBody body = ResponseBody.create(contentType != null ? MediaType.parse(contentType) : null,
+                    contentLength, source);
+
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(httpResponse.version() == HttpClient.Version.HTTP_2 ? Protocol.HTTP_2 : Protocol.HTTP_1_1)
+                    .code(httpResponse.statusCode())
+                    .message("")
+                    .headers(headers)
+                    .body(body)
+                    .sentRequestAtMillis(System.currentTimeMillis())
+                    .receivedResponseAtMillis(System.currentTimeMillis())
+                    .build();
+        }
+
+        private long parseLength(String value) {
+            if (value == null)
+                return -1;
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private final class InterceptorChain implements Interceptor.Chain {
+            private final List<Interceptor> interceptors;
+            private final int index;
+            private final Request request;
+
+            InterceptorChain(List<Interceptor> interceptors, int index, Request request) {
+                this.interceptors = interceptors;
+                this.index = index;
+                this.request = request;
+            }
+
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response proceed(Request request) throws IOException {
+                if (index < interceptors.size())
+                    return interceptors.get(index).intercept(new InterceptorChain(interceptors, index + 1, request));
+                return send(request);
+            }
+
+            @Override
+            public Connection connection() {
+                return null;
+            }
+
+            @Override
+            public Call call() {
+                return JdkCall.this;
+            }
+
+            @Override
+            public int connectTimeoutMillis() {
+                return client.connectTimeoutMillis();
+            }
+
+            @Override
+            public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+                return this;
+            }
+
+            @Override
+            public int readTimeoutMillis() {
+                return client.readTimeoutMillis();
+            }
+
+            @Override
+            public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+                return this;
+            }
+
+            @Override
+            public int writeTimeoutMillis() {
+                return client.writeTimeoutMillis();
+            }
+
+            @Override
+            public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+                return this;
+            }
+        }
+
+        private final class AsyncInterceptorChain implements AsyncInterceptor.Chain {
+            private final List<Interceptor> interceptors;
+            private final int index;
+            private final Request request;
+
+            AsyncInterceptorChain(List<Interceptor> interceptors, int index, Request request) {
+                this.interceptors = interceptors;
+                this.index = index;
+                this.request = request;
+            }
+
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Call call() {
+                return JdkCall.this;
+            }
+
+            @Override
+            public Executor executor() {
+                return executor;
+            }
+
+            @Override
+            public CompletableFuture<Response> proceedAsync(Request request) {
+                if (index >= interceptors.size())
+                    return sendAsync(request);
+
+                AsyncInterceptor interceptor = (AsyncInterceptor) interceptors.get(index);
+                try {
+                    return interceptor.interceptAsync(new AsyncInterceptorChain(interceptors, index + 1, request));
+                } catch (RuntimeException e) {
+                    return AsyncInterceptor.failed(e);
+                }
+            }
+        }
+    }
+}
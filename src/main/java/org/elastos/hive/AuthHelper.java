@@ -4,20 +4,25 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import org.elastos.did.jwt.Claims;
 import org.elastos.hive.connection.ConnectionManager;
+import org.elastos.hive.connection.EndpointSelector;
 import org.elastos.hive.connection.model.BaseServiceConfig;
-import org.elastos.hive.connection.model.HeaderConfig;
 import org.elastos.hive.exception.HiveException;
 import org.elastos.hive.utils.JsonUtil;
 import org.elastos.hive.utils.JwtUtil;
+import org.elastos.hive.utils.LogUtil;
 import org.elastos.hive.utils.ResponseHelper;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
@@ -35,61 +40,202 @@ class AuthHelper implements ConnectHelper {
 	private static final String APP_ID_KEY = "app_id";
 	private static final String APP_INSTANCE_DID_KEY = "app_instance_did";
 
+	private static final CompletableFuture<Void> VALID = CompletableFuture.completedFuture(null);
+	private static final long MIN_RENEWAL_LIFETIME = 60 * 1000;
+
 	private String ownerDid;
 	private String userDid;
 	private String appId;
 	private String appInstanceDid;
 
-	private String nodeUrl;
+	private volatile String nodeUrl;
+	private EndpointSelector endpointSelector;
+
+	private volatile AuthToken token;
+	private final AtomicLong tokenGeneration = new AtomicLong();
 
-	private AuthToken token;
-	private Persistent persistent;
+	private final Object refreshLock = new Object();
+	private CompletableFuture<Void> pendingRefresh;
+	private ScheduledFuture<?> renewalTask;
+	private volatile boolean usedSinceRenewal;
+	private volatile boolean closed;
+
+	private volatile Persistent persistent;
 
 	private ConnectionManager connectionManager;
+	private BaseServiceConfig serviceConfig;
+	private Executor executor;
 	private HiveContext context;
 	private Client.AuthenticationShim authenticationShim;
 
-	public AuthHelper(HiveContext context, String ownerDid, String nodeUrl, Client.AuthenticationShim shim) {
+	public AuthHelper(HiveContext context, String ownerDid, String nodeUrl, Client.AuthenticationShim shim,
+					  BaseServiceConfig serviceConfig, Executor executor) {
 		this.ownerDid = ownerDid;
 		this.nodeUrl = nodeUrl;
 		this.context = context;
 		this.authenticationShim = shim;
-		this.persistent = new AuthInfoStoreImpl(ownerDid, nodeUrl, this.context.getLocalDataDir());
+		this.serviceConfig = serviceConfig;
+		this.executor = executor;
+		this.persistent = openTokenStore(nodeUrl);
 
 		try {
-			BaseServiceConfig config = new BaseServiceConfig.Builder().build();
-			this.connectionManager = new ConnectionManager(this.nodeUrl, config);
+			this.connectionManager = new ConnectionManager(this.nodeUrl, this.serviceConfig);
+			this.connectionManager.setTokenRefresher(this::refreshRejectedToken);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	private Persistent openTokenStore(String provider) {
+		Persistent store = this.context.getTokenStore(this.ownerDid, provider);
+		return store != null ? store : new IndexedAuthInfoStore(this.ownerDid, provider, this.context.getLocalDataDir());
+	}
+
 	public ConnectionManager getConnectionManager() {
 		return this.connectionManager;
 	}
 
+	public Executor getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Let the calls follow the endpoint chosen by the selector, the vault moves
+	 * to another endpoint on its next call when the current one degrades.
+	 *
+	 * @param endpointSelector the selector of the vault endpoints
+	 */
+	public void setEndpointSelector(EndpointSelector endpointSelector) {
+		this.endpointSelector = endpointSelector;
+	}
+
+	public String getNodeUrl() {
+		return this.nodeUrl;
+	}
+
 	@Override
 	public CompletableFuture<Void> checkValid() {
+		if (!usedSinceRenewal)
+			usedSinceRenewal = true;
+
+		if (endpointSelector != null) {
+			String endpoint = endpointSelector.select();
+			if (!endpoint.equals(this.nodeUrl))
+				switchEndpoint(endpoint);
+		}
+
+		// Fast path: a valid token needs neither the lock nor an executor hop.
+		AuthToken current = this.token;
+		if (current != null && !current.isExpired())
+			return VALID;
+
 		return CompletableFuture.runAsync(() -> {
 			try {
 				doCheckExpired();
 			} catch (Exception e) {
-				throw new CompletionException(new HiveException(e.getMessage()));
+				throw new CompletionException(CallHelper.toHiveException(e));
 			}
-		});
+		}, this.executor);
 	}
 
-	private synchronized void doCheckExpired() throws HiveException {
-		if(null == token) tryRestoreToken();
-		if (token == null || token.isExpired()) {
-			signIn();
+	/**
+	 * Move the calls to another endpoint. The tokens are issued per node, so the
+	 * one of the previous node is dropped and the next call signs in again.
+	 */
+	private void switchEndpoint(String endpoint) {
+		synchronized (refreshLock) {
+			if (endpoint.equals(this.nodeUrl))
+				return;
+
+			LogUtil.d("Switch vault endpoint from " + this.nodeUrl + " to " + endpoint);
+			this.nodeUrl = endpoint;
+			this.persistent = openTokenStore(endpoint);
+			this.connectionManager.resetVaultApi(endpoint, this.serviceConfig);
+			this.connectionManager.setAuthToken(null);
+			this.token = null;
+			this.tokenGeneration.incrementAndGet();
+			if (renewalTask != null) {
+				renewalTask.cancel(false);
+				renewalTask = null;
+			}
 		}
-		initConnection();
 	}
 
-	private synchronized void retryLogin()  throws HiveException {
-		signIn();
-		initConnection();
+	private void doCheckExpired() throws HiveException {
+		long generation = this.tokenGeneration.get();
+		AuthToken current = this.token;
+		if (current != null && !current.isExpired())
+			return;
+
+		refreshToken(generation, false);
+	}
+
+	private void retryLogin(long generation) throws HiveException {
+		refreshToken(generation, true);
+	}
+
+	/**
+	 * Called from the connection when the node rejected the token, the request
+	 * is replayed with the returned token.
+	 */
+	AuthToken refreshRejectedToken(AuthToken rejected) throws IOException {
+		long generation = this.tokenGeneration.get();
+		if (this.token == rejected) {
+			try {
+				retryLogin(generation);
+			} catch (HiveException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+		return this.token;
+	}
+
+	/**
+	 * Single-flight token refresh: the first caller signs in, the concurrent ones
+	 * wait on the same future. A caller that observed an older generation than the
+	 * current one returns immediately, the token has been renewed meanwhile.
+	 *
+	 * @param seenGeneration the token generation the caller has been working with
+	 * @param force sign in even if the restored token looks valid
+	 * @throws HiveException
+	 */
+	private void refreshToken(long seenGeneration, boolean force) throws HiveException {
+		CompletableFuture<Void> refresh;
+		boolean owner = false;
+
+		synchronized (refreshLock) {
+			AuthToken current = this.token;
+			if (seenGeneration != this.tokenGeneration.get() && current != null && !current.isExpired())
+				return;
+
+			if (pendingRefresh == null) {
+				pendingRefresh = new CompletableFuture<>();
+				owner = true;
+			}
+			refresh = pendingRefresh;
+		}
+
+		if (owner) {
+			try {
+				if (!force && null == token)
+					tryRestoreToken();
+				if (force || token == null || token.isExpired())
+					signIn();
+				refresh.complete(null);
+			} catch (Exception e) {
+				refresh.completeExceptionally(e);
+			} finally {
+				synchronized (refreshLock) {
+					pendingRefresh = null;
+				}
+			}
+		}
+
+		try {
+			refresh.join();
+		} catch (CompletionException e) {
+			throw CallHelper.toHiveException(e);
+		}
 	}
 
 	private void signIn() throws HiveException {
@@ -113,7 +259,7 @@ class AuthHelper implements ConnectHelper {
 				nodeAuth(approveJwtToken);
 			}
 		} catch (Exception e) {
-			throw new HiveException(e.getMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -166,25 +312,22 @@ class AuthHelper implements ConnectHelper {
 		setAppId(props.get("appDid").textValue());
 		setAppInstanceDid((String) claims.get("aud"));
 
-		long expiresTime = System.currentTimeMillis() / 1000 + exp / 1000;
+		long expiresTime = exp / 1000;
 
-		token = new AuthToken("",
+		updateToken(new AuthToken("",
 				accessToken,
-				expiresTime, "token");
+				expiresTime, "token"));
 
 		//Store the local data.
 		writebackToken();
 
-		//init connection
-		initConnection();
-
 	}
 
 
 	private void tryRestoreToken() {
 		try {
 
-			JSONObject json = persistent.parseFrom();
+			JSONObject json = TokenWriter.read(persistent);
 
 			if(!json.has(ACCESS_TOKEN_KEY)) return;
 
@@ -192,10 +335,10 @@ class AuthHelper implements ConnectHelper {
 			this.appId = json.getString(APP_ID_KEY);
 			this.appInstanceDid = json.getString(APP_INSTANCE_DID_KEY);
 
-			this.token = new AuthToken(json.getString(REFRESH_TOKEN_KEY),
+			updateToken(new AuthToken(json.getString(REFRESH_TOKEN_KEY),
 					json.getString(ACCESS_TOKEN_KEY),
 					json.getLong(EXPIRES_AT_KEY),
-					json.getString(TOKEN_TYPE_KEY));
+					json.getString(TOKEN_TYPE_KEY)));
 		} catch (JSONException e) {
 			e.printStackTrace();
 		} catch (HiveException e) {
@@ -215,23 +358,78 @@ class AuthHelper implements ConnectHelper {
 			json.put(APP_ID_KEY, this.appId);
 			json.put(APP_INSTANCE_DID_KEY, this.appInstanceDid);
 
-			persistent.upateContent(json);
+			TokenWriter.submit(persistent, json);
 		} catch (JSONException e) {
 			e.printStackTrace();
-		} catch (HiveException e) {
-			e.printStackTrace();
 		}
 	}
 
-	private void initConnection() {
-		HeaderConfig headerConfig = new HeaderConfig.Builder()
-				.authToken(token)
-				.build();
-		BaseServiceConfig baseServiceConfig = new BaseServiceConfig.Builder()
-				.headerConfig(headerConfig)
-				.build();
-		this.connectionManager.resetVaultApi(this.nodeUrl,
-				baseServiceConfig);
+	/**
+	 * Publish the token to the connection before exposing it to the fast path of
+	 * {@link #checkValid()}, so a request never goes out with a stale header.
+	 */
+	private void updateToken(AuthToken authToken) {
+		this.connectionManager.setAuthToken(authToken);
+		this.token = authToken;
+		long generation = this.tokenGeneration.incrementAndGet();
+		scheduleRenewal(authToken, generation);
+	}
+
+	/**
+	 * Schedule the renewal of the token at the configured fraction of its lifetime,
+	 * so the foreground requests keep using a valid token and never wait for a sign in.
+	 * The renewal is skipped if the vault has not been used meanwhile, and the task
+	 * does not keep a vault dropped by the application alive.
+	 */
+	private void scheduleRenewal(AuthToken authToken, long generation) {
+		synchronized (refreshLock) {
+			if (renewalTask != null) {
+				renewalTask.cancel(false);
+				renewalTask = null;
+			}
+
+			if (authToken == null || closed)
+				return;
+
+			long lifetime = authToken.getExpiredTime() * 1000 - System.currentTimeMillis();
+			if (lifetime < MIN_RENEWAL_LIFETIME)
+				return;
+
+			long delay = TokenRenewalScheduler.renewalDelay(lifetime,
+					this.serviceConfig.getTokenRenewalRatio(),
+					this.serviceConfig.getTokenRenewalJitter());
+			if (delay < 0)
+				return;
+
+			usedSinceRenewal = false;
+			WeakReference<AuthHelper> helper = new WeakReference<>(this);
+			renewalTask = TokenRenewalScheduler.schedule(() -> {
+				AuthHelper target = helper.get();
+				if (target != null)
+					target.renewInBackground(generation);
+			}, delay);
+		}
+	}
+
+	private void renewInBackground(long generation) {
+		// An idle vault gets a new token on demand when it is used again.
+		if (closed || !usedSinceRenewal)
+			return;
+
+		CompletableFuture.runAsync(() -> {
+			try {
+				refreshToken(generation, true);
+			} catch (HiveException e) {
+				LogUtil.e("Background token renewal failed: " + e.getMessage());
+
+				// Try again later while the current token is still usable.
+				AuthToken current = this.token;
+				if (current != null && generation == this.tokenGeneration.get()) {
+					scheduleRenewal(current, generation);
+					usedSinceRenewal = true;
+				}
+			}
+		}, this.executor);
 	}
 
 	public String getOwnerDid() {
@@ -287,17 +485,28 @@ class AuthHelper implements ConnectHelper {
 		if (response == null)
 			throw new HiveException("response is null");
 
-		int code = response.code();
-		if(code==401) {
-			retryLogin();
-		} else {
-			checkResponse(response);
+		// The connection refreshes the token and replays the request on 401,
+		// a 401 left here means the refreshed token has been rejected as well.
+		checkResponse(response);
+	}
+
+	/**
+	 * Stop renewing the token in background, the token is still renewed on
+	 * demand if the vault is used again.
+	 */
+	public void close() {
+		closed = true;
+		synchronized (refreshLock) {
+			if (renewalTask != null) {
+				renewalTask.cancel(false);
+				renewalTask = null;
+			}
 		}
 	}
 
 	public void removeToken() {
-		token = null;
-		persistent.deleteContent();
+		updateToken(null);
+		TokenWriter.submit(persistent, null);
 
 	}
 }
@@ -28,9 +28,14 @@ import org.elastos.hive.utils.CryptoUtil;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
 
 public class AuthInfoStoreImpl implements Persistent {
     private String ownerDid;
@@ -74,23 +79,23 @@ public class AuthInfoStoreImpl implements Persistent {
         return new JSONObject();
     }
 
+    /**
+     * The content is written to a temporary file first, synced, then renamed
+     * over the token file, so a crash never leaves a truncated token.
+     */
     @Override
     public void upateContent(JSONObject conetnt) throws HiveException {
-        FileWriter fileWriter = null;
         try {
             initialize();
-            fileWriter = new FileWriter(configPath);
-            fileWriter.write(conetnt.toString());
+            File tmp = new File(configPath + ".tmp");
+            try (FileOutputStream stream = new FileOutputStream(tmp)) {
+                stream.write(conetnt.toString().getBytes(StandardCharsets.UTF_8));
+                stream.getFD().sync();
+            }
+            Files.move(tmp.toPath(), Paths.get(configPath),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (Exception e) {
             throw new HiveException(e.getMessage());
-        } finally {
-            if (fileWriter != null) {
-                try {
-                    fileWriter.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
         }
     }
 
@@ -104,6 +109,23 @@ public class AuthInfoStoreImpl implements Persistent {
         }
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof AuthInfoStoreImpl))
+            return false;
+
+        AuthInfoStoreImpl other = (AuthInfoStoreImpl) o;
+        return ownerDid.equals(other.ownerDid) && provider.equals(other.provider)
+                && Objects.equals(storePath, other.storePath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ownerDid, provider, storePath);
+    }
+
     private String configPath;
     private void initialize() throws IOException {
         String tokenPath = String.format("%s/%s", storePath,"token");
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive;
+
+import org.elastos.hive.connection.CircuitOpenException;
+import org.elastos.hive.connection.ConcurrencyLimiter;
+import org.elastos.hive.connection.ConnectionManager;
+import org.elastos.hive.connection.PipedRequestBody;
+import org.elastos.hive.connection.RequestHedger;
+import org.elastos.hive.connection.RequestRejectedException;
+import org.elastos.hive.connection.Retrier;
+import org.elastos.hive.exception.DeadlineExceededException;
+import org.elastos.hive.exception.FileNotFoundException;
+import org.elastos.hive.exception.HiveException;
+import org.elastos.hive.exception.ProviderOverloadedException;
+import org.elastos.hive.exception.ProviderUnavailableException;
+import org.elastos.hive.files.UploadOutputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Runs the retrofit calls asynchronously on the OkHttp dispatcher, so an
+ * operation does not hold a thread while waiting for the node, and links
+ * the cancellation of the returned futures to the underlying calls.
+ *
+ * The calls are admitted by the concurrency limiter of the provider before
+ * they are enqueued, so the calls over the limit wait in the fair queues of
+ * the limiter rather than in the dispatcher queue, and can be rejected at once.
+ * Their retries are scheduled on the call timer, so no thread sleeps through
+ * a backoff.
+ */
+final class CallHelper {
+
+	interface ResponseHandler<R, T> {
+		T handle(Response<R> response) throws Exception;
+	}
+
+	private CallHelper() {
+	}
+
+	/**
+	 * Run the operation once the access token is valid. Cancelling the returned
+	 * future cancels the operation, or prevents it from starting.
+	 *
+	 * @param ready the future of the token check
+	 * @param operation the operation to run
+	 * @return the future of the operation result
+	 */
+	static <T> CompletableFuture<T> compose(CompletableFuture<Void> ready, Supplier<CompletableFuture<T>> operation) {
+		return compose(ready, operation, 0);
+	}
+
+	/**
+	 * Run the operation once the access token is valid, failing it with a
+	 * {@link DeadlineExceededException} if it does not complete in time. The
+	 * deadline covers the wait for the token as well as the call itself.
+	 *
+	 * @param ready the future of the token check
+	 * @param operation the operation to run
+	 * @param deadline the deadline in milliseconds, 0 for none
+	 * @return the future of the operation result
+	 */
+	static <T> CompletableFuture<T> compose(CompletableFuture<Void> ready, Supplier<CompletableFuture<T>> operation,
+											long deadline) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		if (deadline > 0) {
+			ScheduledFuture<?> timer = CallTimer.scheduler.schedule(() -> {
+				result.completeExceptionally(new DeadlineExceededException(DeadlineExceededException.EXCEPTION));
+			}, deadline, TimeUnit.MILLISECONDS);
+			result.whenComplete((value, e) -> timer.cancel(false));
+		}
+
+		ready.whenComplete((aVoid, throwable) -> {
+			if (throwable != null) {
+				result.completeExceptionally(unwrap(throwable));
+				return;
+			}
+			if (result.isDone())
+				return;
+
+			CompletableFuture<T> inner;
+			try {
+				inner = operation.get();
+			} catch (Exception e) {
+				// Nothing would complete the result otherwise, the exception being lost in this callback.
+				result.completeExceptionally(toFailure(e));
+				return;
+			}
+			result.whenComplete((value, e) -> {
+				if (result.isCancelled() || e instanceof DeadlineExceededException)
+					inner.cancel(true);
+			});
+			inner.whenComplete((value, e) -> {
+				if (e != null)
+					result.completeExceptionally(unwrap(e));
+				else
+					result.complete(value);
+			});
+		});
+		return result;
+	}
+
+	/**
+	 * Enqueue the call and complete the returned future from the OkHttp callback
+	 * with the result of the handler. Cancelling the returned future cancels the call.
+	 *
+	 * @param call the call to run
+	 * @param handler the handler checking and parsing the response
+	 * @return the future of the parsed result
+	 */
+	static <R, T> CompletableFuture<T> enqueue(Call<R> call, ResponseHandler<R, T> handler) {
+		return new Exchange<>(call, handler, null, null, null).start();
+	}
+
+	/**
+	 * Enqueue the call once admitted by the concurrency limiter of the provider,
+	 * and complete the returned future from the OkHttp callback with the result
+	 * of the handler. The future fails with a {@link ProviderOverloadedException}
+	 * if the limiter rejected the call. An idempotent call is enqueued again
+	 * from the call timer after a transient error, as decided by the retrier
+	 * of the provider. Cancelling the returned future leaves the limiter queue,
+	 * cancels the call or its pending retry.
+	 *
+	 * @param call the call to run
+	 * @param handler the handler checking and parsing the response
+	 * @param connectionManager the connection manager of the vault sending the call
+	 * @return the future of the parsed result
+	 */
+	static <R, T> CompletableFuture<T> enqueue(Call<R> call, ResponseHandler<R, T> handler,
+											   ConnectionManager connectionManager) {
+		return enqueue(call, handler, connectionManager, false);
+	}
+
+	/**
+	 * @param hedge true for the hedged copy of a call, which does not feed the
+	 *              retry budget again
+	 */
+	private static <R, T> CompletableFuture<T> enqueue(Call<R> call, ResponseHandler<R, T> handler,
+													   ConnectionManager connectionManager, boolean hedge) {
+		Retrier retrier = connectionManager.getRetrier();
+		if (retrier != null && !(hedge ? retrier.isRetryable(call.request()) : retrier.onCall(call.request())))
+			retrier = null;
+		return new Exchange<>(call, handler, connectionManager.getConcurrencyLimiter(), connectionManager, retrier)
+				.start();
+	}
+
+	/**
+	 * Enqueue an idempotent read, and send a second copy of it if it has not
+	 * been answered after the hedge delay of the provider. The first success
+	 * completes the returned future and the other call is canceled.
+	 *
+	 * @param call the call to run
+	 * @param handler the handler checking and parsing the response
+	 * @param connectionManager the connection manager of the vault sending the call
+	 * @return the future of the parsed result
+	 */
+	static <R, T> CompletableFuture<T> enqueueHedged(Call<R> call, ResponseHandler<R, T> handler,
+													 ConnectionManager connectionManager) {
+		RequestHedger hedger = connectionManager.getHedger();
+		if (hedger == null)
+			return enqueue(call, handler, connectionManager);
+
+		long delay = hedger.onRead();
+		CompletableFuture<T> primary = attempt(call, handler, hedger, connectionManager, false);
+		if (delay < 0)
+			return primary;
+
+		CompletableFuture<T> result = new CompletableFuture<>();
+		CompletableFuture<T> hedge = new CompletableFuture<>();
+		ScheduledFuture<?> timer = CallTimer.scheduler.schedule(() -> {
+			if (result.isDone() || primary.isDone() || !hedger.tryHedge()) {
+				hedge.cancel(false);
+				return;
+			}
+			CompletableFuture<T> attempt = attempt(call.clone(), handler, hedger, connectionManager, true);
+			// The hedge is canceled once the result is settled, which cancels the call it sent.
+			hedge.whenComplete((value, e) -> {
+				if (hedge.isCancelled())
+					attempt.cancel(true);
+			});
+			attempt.whenComplete((value, e) -> {
+				if (e != null)
+					hedge.completeExceptionally(unwrap(e));
+				else
+					hedge.complete(value);
+			});
+		}, delay, TimeUnit.MILLISECONDS);
+
+		primary.whenComplete((value, e) -> {
+			// A failed read is not hedged, unless the hedge is already on its way.
+			if (e != null && timer.cancel(false))
+				hedge.cancel(false);
+			settle(result, value, e, hedge);
+		});
+		hedge.whenComplete((value, e) -> {
+			if (!hedge.isCancelled())
+				settle(result, value, e, primary);
+			else if (primary.isCompletedExceptionally())
+				primary.whenComplete((v, primaryError) -> result.completeExceptionally(unwrap(primaryError)));
+		});
+		result.whenComplete((value, e) -> {
+			timer.cancel(false);
+			primary.cancel(true);
+			hedge.cancel(true);
+		});
+		return result;
+	}
+
+	private static <R, T> CompletableFuture<T> attempt(Call<R> call, ResponseHandler<R, T> handler,
+													   RequestHedger hedger, ConnectionManager connectionManager,
+													   boolean hedge) {
+		long start = System.nanoTime();
+		CompletableFuture<T> future = enqueue(call, handler, connectionManager, hedge);
+		future.whenComplete((value, e) -> {
+			if (e == null)
+				hedger.record(System.nanoTime() - start);
+		});
+		return future;
+	}
+
+	/**
+	 * Complete the result with a success at once, or with a failure once the
+	 * other attempt has failed too or was never sent.
+	 */
+	private static <T> void settle(CompletableFuture<T> result, T value, Throwable e, CompletableFuture<T> other) {
+		if (e == null) {
+			result.complete(value);
+		} else if (other.isDone() && (other.isCompletedExceptionally() || other.isCancelled())) {
+			result.completeExceptionally(unwrap(e));
+		}
+	}
+
+	/**
+	 * Start the upload call and hand its body stream to the caller as the
+	 * requested result type. Closing the stream waits for the node response
+	 * and reports a failed upload as an IOException.
+	 *
+	 * @param body the streaming body of the call
+	 * @param call the upload call
+	 * @param handler the handler checking the response
+	 * @param resultType OutputStream or OutputStreamWriter
+	 * @return the future of the upload stream
+	 */
+	static <R, T> CompletableFuture<T> upload(PipedRequestBody body, Call<R> call, ResponseHandler<R, ?> handler,
+											  Class<T> resultType) {
+		boolean isWriter = resultType.isAssignableFrom(OutputStreamWriter.class);
+		if (!isWriter && !resultType.isAssignableFrom(OutputStream.class))
+			return failed(new HiveException("Not supported result type"));
+
+		CompletableFuture<Object> result = enqueue(call, handler::handle);
+		result.whenComplete((value, throwable) -> body.abort());
+
+		UploadOutputStream uploader = new UploadOutputStream(body.outputStream(), result);
+		return CompletableFuture.completedFuture(resultType.cast(isWriter ? new OutputStreamWriter(uploader) : uploader));
+	}
+
+	static <T> CompletableFuture<T> failed(Throwable t) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(toFailure(t));
+		return future;
+	}
+
+	/**
+	 * The attempts of one enqueued call. Each attempt is admitted by the limiter,
+	 * if any, and gives its permit back with its outcome. The transitions and
+	 * the cancellation are synchronized, so a cancellation reaches the current
+	 * stage: the limiter queue, the call or the retry timer.
+	 */
+	private static final class Exchange<R, T> implements Callback<R> {
+		private final ResponseHandler<R, T> handler;
+		private final ConcurrencyLimiter limiter;
+		private final Object vault;
+		private final Retrier retrier;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private Call<R> call;
+		private CompletableFuture<Void> permit;
+		private ScheduledFuture<?> retryTimer;
+		private int attempt = 1;
+		private long sentAt;
+
+		Exchange(Call<R> call, ResponseHandler<R, T> handler, ConcurrencyLimiter limiter, Object vault,
+				 Retrier retrier) {
+			this.call = call;
+			this.handler = handler;
+			this.limiter = limiter;
+			this.vault = vault;
+			this.retrier = retrier;
+			future.whenComplete((value, throwable) -> {
+				if (future.isCancelled())
+					cancel();
+			});
+		}
+
+		CompletableFuture<T> start() {
+			admit();
+			return future;
+		}
+
+		private synchronized void admit() {
+			if (future.isDone())
+				return;
+
+			if (limiter == null) {
+				dispatch();
+				return;
+			}
+
+			CompletableFuture<Void> permit = limiter.acquire(vault);
+			this.permit = permit;
+			permit.whenComplete((aVoid, throwable) -> onAdmitted(throwable));
+		}
+
+		private synchronized void onAdmitted(Throwable throwable) {
+			if (throwable != null) {
+				future.completeExceptionally(toFailure(unwrap(throwable)));
+			} else if (future.isDone()) {
+				limiter.releaseIgnored();
+			} else {
+				dispatch();
+			}
+		}
+
+		private void dispatch() {
+			sentAt = System.nanoTime();
+			call.enqueue(this);
+		}
+
+		private synchronized void cancel() {
+			if (retryTimer != null)
+				retryTimer.cancel(false);
+			if (permit == null || !permit.cancel(false))
+				call.cancel();
+		}
+
+		private synchronized void retryLater(long delay) {
+			if (future.isDone())
+				return;
+
+			attempt++;
+			call = call.clone();
+			permit = null;
+			retryTimer = CallTimer.scheduler.schedule(this::admit, delay, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void onResponse(Call<R> call, Response<R> response) {
+			if (limiter != null)
+				limiter.release(System.nanoTime() - sentAt, ConcurrencyLimiter.isOverloaded(response.code()));
+
+			if (future.isCancelled()) {
+				closeQuietly(response);
+				return;
+			}
+
+			long delay = retrier != null ? retrier.onResponse(call.request(), attempt, response.raw()) : -1;
+			if (delay >= 0) {
+				closeQuietly(response);
+				retryLater(delay);
+				return;
+			}
+
+			try {
+				future.complete(handler.handle(response));
+			} catch (Exception e) {
+				future.completeExceptionally(toFailure(e));
+			}
+		}
+
+		@Override
+		public void onFailure(Call<R> call, Throwable t) {
+			if (limiter != null) {
+				// Canceled or shed calls say nothing about the node load.
+				if (call.isCanceled() || t instanceof RequestRejectedException || t instanceof CircuitOpenException)
+					limiter.releaseIgnored();
+				else
+					limiter.release(System.nanoTime() - sentAt, true);
+			}
+
+			long delay = retrier != null && !call.isCanceled() && t instanceof IOException
+					? retrier.onFailure(call.request(), attempt, (IOException) t) : -1;
+			if (delay >= 0) {
+				retryLater(delay);
+				return;
+			}
+
+			future.completeExceptionally(toFailure(t));
+		}
+	}
+
+	private static final class CallTimer {
+		static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "hive-call-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static void closeQuietly(Response<?> response) {
+		Object body = response.isSuccessful() ? response.body() : response.errorBody();
+		if (body instanceof Closeable) {
+			try {
+				((Closeable) body).close();
+			} catch (IOException e) {
+				// Ignore, the result has been dropped anyway.
+			}
+		}
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+	}
+
+	private static Throwable toFailure(Throwable t) {
+		if (t instanceof FileNotFoundException)
+			return t;
+		return toHiveException(t);
+	}
+
+	/**
+	 * Map the failure of a call to the exception reported to the application,
+	 * for the enqueued and the executed calls alike. A call shed by the SDK is
+	 * reported as {@link ProviderOverloadedException} and a call stopped by an
+	 * open circuit as {@link ProviderUnavailableException}, wherever they are
+	 * in the causes. The other failures keep their cause.
+	 *
+	 * @param t the failure of the call
+	 * @return the exception to report
+	 */
+	static HiveException toHiveException(Throwable t) {
+		t = unwrap(t);
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ProviderOverloadedException || cause instanceof ProviderUnavailableException)
+				return (HiveException) cause;
+			if (cause instanceof RequestRejectedException)
+				return new ProviderOverloadedException(cause.getLocalizedMessage(), cause);
+			if (cause instanceof CircuitOpenException)
+				return new ProviderUnavailableException(cause.getLocalizedMessage(), cause);
+			if (cause.getCause() == cause)
+				break;
+		}
+
+		if (t instanceof HiveException)
+			return (HiveException) t;
+		return new HiveException(t.getLocalizedMessage(), t);
+	}
+}
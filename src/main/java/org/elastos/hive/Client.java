@@ -21,41 +21,78 @@
  */
 package org.elastos.hive;
 
-import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
-import org.elastos.did.DID;
 import org.elastos.did.DIDBackend;
-import org.elastos.did.DIDDocument;
 import org.elastos.did.backend.ResolverCache;
-import org.elastos.did.exception.DIDException;
 import org.elastos.did.exception.DIDResolveException;
+import org.elastos.hive.connection.EndpointSelector;
+import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.connection.model.DidCacheConfig;
+import org.elastos.hive.connection.model.VaultPoolConfig;
 import org.elastos.hive.exception.CreateVaultFailedException;
 import org.elastos.hive.exception.HiveException;
 import org.elastos.hive.exception.VaultAlreadyExistException;
+import org.elastos.hive.utils.ExecutorUtil;
 
 public class Client {
 	private static boolean resolverDidSetup;
 
 	private AuthenticationShim authenticationShim;
 	private HiveContext context;
+	private BaseServiceConfig serviceConfig;
+	private Executor executor;
+	private VaultPool vaultPool;
 
+	/**
+	 * Runs the authorizations of the vaults of the client concurrently, up to
+	 * the configured limit. Each vault signs in once at a time on its own.
+	 */
 	static class AuthenticationShim implements InternalHandler {
+		private final Semaphore permits;
+
+		AuthenticationShim(int maxConcurrentAuthorizations) {
+			this.permits = new Semaphore(maxConcurrentAuthorizations, true);
+		}
 
 		@Override
-		public synchronized String authenticate(HiveContext context, String jwtToken) {
-			return context.getAuthorization(jwtToken);
+		public String authenticate(HiveContext context, String jwtToken) {
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(new HiveException("Interrupted while waiting for the authorization"));
+			}
+
+			try {
+				return context.getAuthorization(jwtToken);
+			} finally {
+				permits.release();
+			}
 		}
 	}
 
-	private Client(HiveContext context) {
+	private Client(HiveContext context, BaseServiceConfig serviceConfig) {
 		this.context = context;
-		authenticationShim = new AuthenticationShim();
+		this.serviceConfig = serviceConfig;
+		this.executor = context.getExecutor() != null ? context.getExecutor() : ExecutorUtil.defaultExecutor();
+		authenticationShim = new AuthenticationShim(serviceConfig.getMaxConcurrentAuthorizations());
+		this.vaultPool = new VaultPool(serviceConfig.getVaultPoolConfig());
 	}
 
 	/**
@@ -97,34 +134,47 @@ public class Client {
 
 
 	public static Client createInstance(HiveContext context) throws HiveException {
-		if (context == null)
+		return createInstance(context, new BaseServiceConfig.Builder().build());
+	}
+
+	/**
+	 * Create client instance with the customized service config.
+	 * The connection pool and dispatcher settings in the config are applied
+	 * to the client shared by all vaults on the same provider.
+	 *
+	 * @param context the hive context
+	 * @param serviceConfig the service config
+	 * @return the client instance
+	 * @throws HiveException
+	 */
+	public static Client createInstance(HiveContext context, BaseServiceConfig serviceConfig) throws HiveException {
+		if (context == null || serviceConfig == null)
 			throw new IllegalArgumentException();
 
 		if (!resolverDidSetup)
 			throw new HiveException("Setup did resolver first");
 
-		return new Client(context);
+		return new Client(context, serviceConfig);
 	}
 
 	/**
 	 * get Vault instance with specified DID.
 	 * Try to get a vault on target provider address with following steps:
+	 *  - Reuse the vault opened before for the same DID and provider if still pooled; Otherwise
 	 *  - Get the target provider address;
 	 *  - Create a new vaule of local instance..
 	 *
 	 * @param ownerDid  the owner did related to target vault
 	 * @param preferredProviderAddress the preferred target provider address
-	 * @return a new vault instance.
+	 * @return the vault instance.
 	 */
 	public CompletableFuture<Vault> getVault(String ownerDid, String preferredProviderAddress) {
-		return getVaultProvider(ownerDid, preferredProviderAddress)
-				.thenApplyAsync(provider -> {
-					AuthHelper authHelper = new AuthHelper(this.context,
-							ownerDid,
-							provider,
-							this.authenticationShim);
-					return new Vault(authHelper, provider, ownerDid);
-				});
+		if (ownerDid == null)
+			throw new IllegalArgumentException("Parameters 'ownerDid' can not be null");
+
+		return this.vaultPool.obtain(ownerDid, preferredProviderAddress,
+				() -> getVaultProviders(ownerDid, preferredProviderAddress)
+						.thenApplyAsync(providers -> newVault(ownerDid, providers), this.executor));
 	}
 
 	/**
@@ -140,21 +190,15 @@ public class Client {
 	 */
 	public CompletableFuture<Vault> createVault(String ownerDid, String preferredProviderAddress) {
 
-		return getVaultProvider(ownerDid, preferredProviderAddress)
-				.thenApplyAsync(provider -> {
-					AuthHelper authHelper = new AuthHelper(this.context,
-							ownerDid,
-							provider,
-							this.authenticationShim);
-					return new Vault(authHelper, provider, ownerDid);
-				})
-				.thenComposeAsync(vault -> vault.checkVaultExist())
+		return getVaultProviders(ownerDid, preferredProviderAddress)
+				.thenApplyAsync(providers -> newVault(ownerDid, providers), this.executor)
+				.thenComposeAsync(vault -> vault.checkVaultExist(), this.executor)
 				.thenComposeAsync((Function<Vault, CompletionStage<Vault>>) vault -> {
 					if (null == vault) {
 						throw new VaultAlreadyExistException("Vault already existed.");
 					}
 					return vault.requestToCreateVault();
-				})
+				}, this.executor)
 				.handleAsync((BiFunction<Vault, Throwable, Vault>) (vault, throwable) -> {
 					if (null!=throwable) {
 						throw new CreateVaultFailedException(throwable.getLocalizedMessage());
@@ -162,8 +206,136 @@ public class Client {
 					if(vault==null) {
 						throw new CreateVaultFailedException(CreateVaultFailedException.EXCEPTION);
 					}
+					this.vaultPool.put(ownerDid, preferredProviderAddress, vault);
 					return vault;
+				}, this.executor);
+	}
+
+	/**
+	 * Get the vaults of many owner DIDs ready before serving them, such as at
+	 * start up. See {@link #warmUp(Collection, int)}, the concurrency being the
+	 * maximum number of concurrent authorizations of the service config.
+	 *
+	 * @param ownerDids the owner DIDs of the vaults
+	 * @return the report of the warm up
+	 * @throws IllegalArgumentException if the vault pool is disabled or smaller
+	 *         than the number of distinct owner DIDs
+	 */
+	public CompletableFuture<WarmUpReport> warmUp(Collection<String> ownerDids) {
+		return warmUp(ownerDids, this.serviceConfig.getMaxConcurrentAuthorizations());
+	}
+
+	/**
+	 * Get the vaults of many owner DIDs ready before serving them: resolve
+	 * their providers, restore their tokens or sign in, and open a connection
+	 * to each provider. The vaults are kept in the vault pool, so the next
+	 * calls to {@link #getVault(String, String)} get them ready.
+	 *
+	 * The returned future always completes normally, the failure of a vault
+	 * is reported in its entry.
+	 *
+	 * The vault pool must be enabled and large enough for all the distinct
+	 * owner DIDs, otherwise the vaults would be dropped as soon as they are
+	 * ready. A warmed up vault left unused beyond the idle timeout of the pool
+	 * is dropped as well.
+	 *
+	 * @param ownerDids the owner DIDs of the vaults
+	 * @param concurrency the maximum number of vaults warmed up at once
+	 * @return the report of the warm up
+	 * @throws IllegalArgumentException if the vault pool is disabled or smaller
+	 *         than the number of distinct owner DIDs
+	 */
+	public CompletableFuture<WarmUpReport> warmUp(Collection<String> ownerDids, int concurrency) {
+		if (ownerDids == null)
+			throw new IllegalArgumentException("Parameters 'ownerDids' can not be null");
+		if (concurrency < 1)
+			throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+
+		List<String> dids = new ArrayList<>(new LinkedHashSet<>(ownerDids));
+		if (dids.isEmpty())
+			return CompletableFuture.completedFuture(new WarmUpReport(new ArrayList<>(), 0));
+
+		VaultPoolConfig poolConfig = this.serviceConfig.getVaultPoolConfig();
+		if (!poolConfig.isEnabled())
+			throw new IllegalArgumentException("The vault pool is disabled, the warmed up vaults would not be kept");
+		if (dids.size() > poolConfig.getMaxSize())
+			throw new IllegalArgumentException("Too many owner DIDs for the vault pool: "
+					+ dids.size() + " > " + poolConfig.getMaxSize());
+
+		WarmUpReport.Entry[] entries = new WarmUpReport.Entry[dids.size()];
+		Set<String> connectedProviders = ConcurrentHashMap.newKeySet();
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		CompletableFuture<WarmUpReport> report = new CompletableFuture<>();
+		long start = System.currentTimeMillis();
+
+		// Each worker takes the next DID once its vault is done, so at most 'concurrency' run at once.
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int index = next.getAndIncrement();
+				if (index >= dids.size())
+					return;
+
+				String ownerDid = dids.get(index);
+				long begin = System.currentTimeMillis();
+				warmUpVault(ownerDid, connectedProviders).whenComplete((vault, e) -> {
+					Throwable error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+					entries[index] = new WarmUpReport.Entry(ownerDid,
+							vault != null ? vault.getProviderAddress() : null,
+							System.currentTimeMillis() - begin, error);
+
+					if (done.incrementAndGet() == dids.size())
+						report.complete(new WarmUpReport(Arrays.asList(entries), System.currentTimeMillis() - start));
+					else
+						executor.execute(this);
 				});
+			}
+		};
+
+		for (int i = 0; i < Math.min(concurrency, dids.size()); i++)
+			this.executor.execute(worker);
+
+		return report;
+	}
+
+	private CompletableFuture<Vault> warmUpVault(String ownerDid, Set<String> connectedProviders) {
+		try {
+			return getVault(ownerDid, null)
+					.thenCompose(Vault::authenticate)
+					.thenCompose(vault -> {
+						// One call per provider is enough to open the connection shared by its vaults.
+						if (!connectedProviders.add(vault.getProviderAddress()))
+							return CompletableFuture.completedFuture(vault);
+						return vault.getNodeVersion().thenApply(version -> vault);
+					});
+		} catch (RuntimeException e) {
+			CompletableFuture<Vault> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Build the vault on the given endpoints. With more than one endpoint, the
+	 * calls go to the fastest healthy one and move to another one on failure.
+	 */
+	private Vault newVault(String ownerDid, List<String> providers) {
+		EndpointSelector selector = null;
+		if (providers.size() > 1) {
+			selector = new EndpointSelector(providers, this.serviceConfig);
+			selector.probe();
+		}
+
+		String provider = selector != null ? selector.select() : providers.get(0);
+		AuthHelper authHelper = new AuthHelper(this.context,
+				ownerDid,
+				provider,
+				this.authenticationShim,
+				this.serviceConfig,
+				this.executor);
+		authHelper.setEndpointSelector(selector);
+		return new Vault(authHelper, provider, ownerDid);
 	}
 
 	/**
@@ -171,7 +343,8 @@ public class Client {
 	 *  - Use 'preferredProviderAddress' first when it's being with real value; Otherwise
 	 *  - Resolve DID document according to the ownerDid from DID sidechain,
 	 *    and find if there are more than one "HiveVault" services, then would
-	 *    choose the first one service point as target provider address. Otherwise
+	 *    choose the healthy one with the lowest round trip time as target provider
+	 *    address, measured from the previous calls. Otherwise
 	 *  - It means no service endpoints declared on this DID Document, then would throw the
 	 *    corresponding exception.
 	 *
@@ -180,37 +353,24 @@ public class Client {
 	 * @return the provider address
 	 */
 	public CompletableFuture<String> getVaultProvider(String ownerDid, String preferredProviderAddress) {
+		return getVaultProviders(ownerDid, preferredProviderAddress)
+				.thenApply(providers -> providers.size() > 1
+						? new EndpointSelector(providers, this.serviceConfig).select()
+						: providers.get(0));
+	}
+
+	private CompletableFuture<List<String>> getVaultProviders(String ownerDid, String preferredProviderAddress) {
 		if (ownerDid == null)
 			throw new IllegalArgumentException("Parameters 'ownerDid' can not be null");
 
-		return CompletableFuture.supplyAsync(() -> {
-			/* Choose 'preferredProviderAddress' as target provider address if it's with value;
-			 */
-			if (preferredProviderAddress != null)
-				return preferredProviderAddress;
+		/* Choose 'preferredProviderAddress' as target provider address if it's with value;
+		 */
+		if (preferredProviderAddress != null)
+			return CompletableFuture.completedFuture(Collections.singletonList(preferredProviderAddress));
 
-			try {
-				List<DIDDocument.Service> services = null;
-				DID did = new DID(ownerDid);
-				DIDDocument doc;
-
-				doc = did.resolve();
-				if (doc == null)
-					throw new ProviderNotFoundException(
-							String.format("The DID document %s has not published", ownerDid));
-
-				services = doc.selectServices((String) null, "HiveVault");
-				if (services == null || services.size() == 0)
-					throw new ProviderNotFoundException(
-							String.format("No 'HiveVault' services declared on DID document %s", ownerDid));
-
-				/* TODO: should we throw special exception when it has more than one
-				 *       endpoints of service "HiveVault";
-				 */
-				return services.get(0).getServiceEndpoint();
-			} catch (DIDException e) {
-				throw new CompletionException(new HiveException(e.getLocalizedMessage()));
-			}
-		});
+		DidCacheConfig didCacheConfig = this.serviceConfig.getDidCacheConfig();
+		return DidDocumentCache.obtain(didCacheConfig)
+				.lookup(ownerDid, didCacheConfig, this.executor)
+				.thenApply(DidDocumentCache.Entry::getProviders);
 	}
 }
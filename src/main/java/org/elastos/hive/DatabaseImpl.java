@@ -4,7 +4,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 
 import org.elastos.hive.connection.ConnectionManager;
 import org.elastos.hive.database.CountOptions;
@@ -28,85 +27,72 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
-import retrofit2.Response;
 
 class DatabaseImpl implements Database {
 	private AuthHelper authHelper;
 	private ConnectionManager connectionManager;
+	private long deadline;
 
 	DatabaseImpl(AuthHelper authHelper) {
+		this(authHelper, 0);
+	}
+
+	DatabaseImpl(AuthHelper authHelper, long deadline) {
 		this.authHelper = authHelper;
+		this.deadline = deadline;
 		this.connectionManager = authHelper.getConnectionManager();
 	}
 
 	@Override
 	public CompletableFuture<Boolean> createCollection(String name, CreateCollectionOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return createColImp(name);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> createColImp(name), deadline);
 	}
 
-	private boolean createColImp(String collection) throws HiveException {
+	private CompletableFuture<Boolean> createColImp(String collection) {
 		try {
 			Map<String, Object> map = new HashMap<>();
 			map.put("collection", collection);
 			String json = JsonUtil.serialize(map);
 
-			Response response = this.connectionManager.getDatabaseApi()
-					.createCollection(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			return true;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.createCollection(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return true;
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<Boolean> deleteCollection(String name) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return deleteColImp(name);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> deleteColImp(name), deadline);
 	}
 
-	private boolean deleteColImp(String collection) throws HiveException {
+	private CompletableFuture<Boolean> deleteColImp(String collection) {
 		try {
 			Map<String, Object> map = new HashMap<>();
 			map.put("collection", collection);
 			String json = JsonUtil.serialize(map);
 
-			Response response = this.connectionManager.getDatabaseApi()
-					.deleteCollection(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			return true;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.deleteCollection(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return true;
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<InsertOneResult> insertOne(String collection, JsonNode doc, InsertOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return insertOneImp(collection, doc, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> insertOneImp(collection, doc, options), deadline);
 	}
 
-	private InsertOneResult insertOneImp(String collection, JsonNode doc, InsertOptions options) throws HiveException {
+	private CompletableFuture<InsertOneResult> insertOneImp(String collection, JsonNode doc, InsertOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
@@ -114,30 +100,23 @@ class DatabaseImpl implements Database {
 			if(null!=options) rootNode.set("options", JsonUtil.deserialize(options.serialize()));
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.insertOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			InsertOneResult insertResult = InsertOneResult.deserialize(ResponseHelper.toString(response));
-			return insertResult;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.insertOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return InsertOneResult.deserialize(ResponseHelper.toString(response));
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<InsertManyResult> insertMany(String collection, List<JsonNode> docs, InsertOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return insertManyImp(collection, docs, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> insertManyImp(collection, docs, options), deadline);
 	}
 
-	private InsertManyResult insertManyImp(String collection, List<JsonNode> docs, InsertOptions options) throws HiveException {
+	private CompletableFuture<InsertManyResult> insertManyImp(String collection, List<JsonNode> docs, InsertOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			ArrayNode arrayNode = JsonNodeFactory.instance.arrayNode();
@@ -147,30 +126,23 @@ class DatabaseImpl implements Database {
 			if(null!=options) rootNode.set("options", JsonUtil.deserialize(options.serialize()));
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.insertMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			InsertManyResult insertResult = InsertManyResult.deserialize(ResponseHelper.toString(response));
-			return insertResult;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.insertMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return InsertManyResult.deserialize(ResponseHelper.toString(response));
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<Long> countDocuments(String collection, JsonNode query, CountOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return countDocumentsImp(collection, query, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> countDocumentsImp(collection, query, options), deadline);
 	}
 
-	private long countDocumentsImp(String collection, JsonNode query, CountOptions options) throws HiveException {
+	private CompletableFuture<Long> countDocumentsImp(String collection, JsonNode query, CountOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
@@ -178,31 +150,25 @@ class DatabaseImpl implements Database {
 			if(null!=options) rootNode.set("options", JsonUtil.deserialize(options.serialize()));
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.countDocs(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-
-			JsonNode ret = ResponseHelper.getValue(response, JsonNode.class);
-			return ret.get("count").asLong();
+			return CallHelper.enqueueHedged(this.connectionManager.getDatabaseApi()
+					.countDocs(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+
+						JsonNode ret = ResponseHelper.getValue(response, JsonNode.class);
+						return ret.get("count").asLong();
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<JsonNode> findOne(String collection, JsonNode query, FindOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return findOneImp(collection, query, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> findOneImp(collection, query, options), deadline);
 	}
 
-	private JsonNode findOneImp(String collection, JsonNode query, FindOptions options) throws HiveException {
+	private CompletableFuture<JsonNode> findOneImp(String collection, JsonNode query, FindOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
@@ -210,31 +176,24 @@ class DatabaseImpl implements Database {
 			if(null!=options) rootNode.set("options", JsonUtil.deserialize(options.serialize()));
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.findOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			JsonNode jsonNode = ResponseHelper.getValue(response, JsonNode.class);
-			JsonNode item = jsonNode.get("items");
-			return item;
+			return CallHelper.enqueueHedged(this.connectionManager.getDatabaseApi()
+					.findOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						JsonNode jsonNode = ResponseHelper.getValue(response, JsonNode.class);
+						return jsonNode.get("items");
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<List<JsonNode>> findMany(String collection, JsonNode query, FindOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return findManyImp(collection, query, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> findManyImp(collection, query, options), deadline);
 	}
 
-	private List<JsonNode> findManyImp(String collection, JsonNode query, FindOptions options) throws HiveException {
+	private CompletableFuture<List<JsonNode>> findManyImp(String collection, JsonNode query, FindOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
@@ -242,30 +201,23 @@ class DatabaseImpl implements Database {
 			if(null!=options) rootNode.set("options", JsonUtil.deserialize(options.serialize()));
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.findMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			List<JsonNode> jsonNodes = ResponseHelper.getArray(response, "items");
-			return jsonNodes;
+			return CallHelper.enqueueHedged(this.connectionManager.getDatabaseApi()
+					.findMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return ResponseHelper.getArray(response, "items");
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<UpdateResult> updateOne(String collection, JsonNode filter, JsonNode update, UpdateOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return updateOneImp(collection, filter, update, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> updateOneImp(collection, filter, update, options), deadline);
 	}
 
-	private UpdateResult updateOneImp(String collection, JsonNode filter, JsonNode update, UpdateOptions options) throws HiveException {
+	private CompletableFuture<UpdateResult> updateOneImp(String collection, JsonNode filter, JsonNode update, UpdateOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
@@ -274,35 +226,28 @@ class DatabaseImpl implements Database {
 			if(null!=options) rootNode.set("options", JsonUtil.deserialize(options.serialize()));
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.updateOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			String ret = ResponseHelper.toString(response);
-			if(ret.contains("_error")) {
-				HiveException exception = new HiveException(ret);
-				throw exception;
-			}
-			UpdateResult updateResult = UpdateResult.deserialize(ret);
-			return updateResult;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.updateOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						String ret = ResponseHelper.toString(response);
+						if(ret.contains("_error")) {
+							HiveException exception = new HiveException(ret);
+							throw exception;
+						}
+						return UpdateResult.deserialize(ret);
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<UpdateResult> updateMany(String collection, JsonNode filter, JsonNode update, UpdateOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return updateManyImp(collection, filter, update, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> updateManyImp(collection, filter, update, options), deadline);
 	}
 
-	private UpdateResult updateManyImp(String collection, JsonNode filter, JsonNode update, UpdateOptions options) throws HiveException {
+	private CompletableFuture<UpdateResult> updateManyImp(String collection, JsonNode filter, JsonNode update, UpdateOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
@@ -311,75 +256,60 @@ class DatabaseImpl implements Database {
 			if(null!=options) rootNode.set("options", JsonUtil.deserialize(options.serialize()));
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.updateMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			UpdateResult updateResult = UpdateResult.deserialize(ResponseHelper.toString(response));
-			return updateResult;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.updateMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return UpdateResult.deserialize(ResponseHelper.toString(response));
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<DeleteResult> deleteOne(String collection, JsonNode filter, DeleteOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return deleteOneImp(collection, filter, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> deleteOneImp(collection, filter, options), deadline);
 	}
 
-	private DeleteResult deleteOneImp(String collection, JsonNode filter, DeleteOptions options) throws HiveException {
+	private CompletableFuture<DeleteResult> deleteOneImp(String collection, JsonNode filter, DeleteOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
 			if(null!=filter) rootNode.set("filter", filter);
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.deleteOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			DeleteResult deleteResult = DeleteResult.deserialize(ResponseHelper.toString(response));
-			return deleteResult;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.deleteOne(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return DeleteResult.deserialize(ResponseHelper.toString(response));
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<DeleteResult> deleteMany(String collection, JsonNode filter, DeleteOptions options) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return deleteManyImp(collection, filter, options);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> deleteManyImp(collection, filter, options), deadline);
 	}
 
-	private DeleteResult deleteManyImp(String collection, JsonNode filter, DeleteOptions options) throws HiveException {
+	private CompletableFuture<DeleteResult> deleteManyImp(String collection, JsonNode filter, DeleteOptions options) {
 		try {
 			ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
 			rootNode.put("collection", collection);
 			if(null!=filter) rootNode.set("filter", filter);
 
 			String json = rootNode.toString();
-			Response response = this.connectionManager.getDatabaseApi()
-					.deleteMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			DeleteResult deleteResult = DeleteResult.deserialize(ResponseHelper.toString(response));
-			return deleteResult;
+			return CallHelper.enqueue(this.connectionManager.getDatabaseApi()
+					.deleteMany(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return DeleteResult.deserialize(ResponseHelper.toString(response));
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 }
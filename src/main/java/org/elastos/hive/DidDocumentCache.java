@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive;
+
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.elastos.did.DID;
+import org.elastos.did.DIDDocument;
+import org.elastos.did.exception.DIDException;
+import org.elastos.hive.connection.model.DidCacheConfig;
+import org.elastos.hive.exception.HiveException;
+import org.elastos.hive.utils.LogUtil;
+
+/**
+ * Cache of the resolved owner DID documents and of the "HiveVault" services
+ * they declare, shared by all the clients like the DID backend is.
+ *
+ * An expired document is served while it is resolved again in background,
+ * and the concurrent lookups of a DID share a single resolution. The cache
+ * is sized by the config of the first client, whereas each lookup follows
+ * the config of its own client: enabled, time to live and stale period.
+ */
+final class DidDocumentCache {
+	private static final DidCacheConfig DEFAULT_CONFIG = new DidCacheConfig.Builder().build();
+	private static volatile DidDocumentCache instance;
+
+	private final int maxSize;
+	private final Map<String, Entry> entries;
+	private final Map<String, CompletableFuture<Entry>> pending = new ConcurrentHashMap<>();
+
+	static final class Entry {
+		private final DIDDocument document;
+		private final List<String> providers;
+		private final long resolvedAt;
+
+		private Entry(DIDDocument document, List<String> providers) {
+			this.document = document;
+			this.providers = providers;
+			this.resolvedAt = System.currentTimeMillis();
+		}
+
+		DIDDocument getDocument() {
+			return document;
+		}
+
+		List<String> getProviders() {
+			return providers;
+		}
+	}
+
+	private DidDocumentCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, DidDocumentCache.Entry> eldest) {
+				return size() > DidDocumentCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Get the cache shared by all the clients, the size of the first config wins.
+	 */
+	static DidDocumentCache obtain(DidCacheConfig config) {
+		if (instance == null) {
+			synchronized (DidDocumentCache.class) {
+				if (instance == null)
+					instance = new DidDocumentCache(config != null
+							? config.getMaxSize() : DidCacheConfig.DEFAULT_MAX_SIZE);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Look up the document of the owner DID and its vault providers.
+	 *
+	 * @param ownerDid the owner DID
+	 * @param config the cache config of the calling client, null for the defaults
+	 * @param executor the executor resolving the DID when needed
+	 * @return the document and providers of the DID
+	 */
+	CompletableFuture<Entry> lookup(String ownerDid, DidCacheConfig config, Executor executor) {
+		if (config == null)
+			config = DEFAULT_CONFIG;
+		if (!config.isEnabled())
+			return CompletableFuture.supplyAsync(() -> resolve(ownerDid), executor);
+
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(ownerDid);
+		}
+
+		if (entry != null) {
+			long age = System.currentTimeMillis() - entry.resolvedAt;
+			if (age < config.getTtl())
+				return CompletableFuture.completedFuture(entry);
+
+			if (age < config.getTtl() + config.getStalePeriod()) {
+				refresh(ownerDid, executor).exceptionally(e -> {
+					LogUtil.e("Failed to refresh the document of " + ownerDid + ": " + e.getMessage());
+					return null;
+				});
+				return CompletableFuture.completedFuture(entry);
+			}
+		}
+
+		return refresh(ownerDid, executor);
+	}
+
+	private CompletableFuture<Entry> refresh(String ownerDid, Executor executor) {
+		CompletableFuture<Entry> future = new CompletableFuture<>();
+		CompletableFuture<Entry> running = pending.putIfAbsent(ownerDid, future);
+		if (running != null)
+			return running;
+
+		try {
+			executor.execute(() -> {
+				try {
+					Entry entry = resolve(ownerDid);
+					synchronized (entries) {
+						entries.put(ownerDid, entry);
+					}
+					pending.remove(ownerDid, future);
+					future.complete(entry);
+				} catch (RuntimeException e) {
+					pending.remove(ownerDid, future);
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.remove(ownerDid, future);
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private static Entry resolve(String ownerDid) {
+		try {
+			DIDDocument doc = new DID(ownerDid).resolve();
+			if (doc == null)
+				throw new ProviderNotFoundException(
+						String.format("The DID document %s has not published", ownerDid));
+
+			List<DIDDocument.Service> services = doc.selectServices((String) null, "HiveVault");
+			if (services == null || services.size() == 0)
+				throw new ProviderNotFoundException(
+						String.format("No 'HiveVault' services declared on DID document %s", ownerDid));
+
+			List<String> providers = new ArrayList<>(services.size());
+			for (DIDDocument.Service service : services)
+				providers.add(service.getServiceEndpoint());
+			return new Entry(doc, Collections.unmodifiableList(providers));
+		} catch (DIDException e) {
+			throw new CompletionException(new HiveException(e.getLocalizedMessage()));
+		}
+	}
+}
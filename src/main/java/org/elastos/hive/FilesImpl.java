@@ -1,24 +1,19 @@
 package org.elastos.hive;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.net.HttpURLConnection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 
 import org.elastos.hive.connection.ConnectionManager;
+import org.elastos.hive.connection.PipedRequestBody;
 import org.elastos.hive.exception.FileNotFoundException;
 import org.elastos.hive.exception.HiveException;
 import org.elastos.hive.files.FileInfo;
 import org.elastos.hive.files.FilesList;
-import org.elastos.hive.files.UploadOutputStream;
 import org.elastos.hive.utils.JsonUtil;
 import org.elastos.hive.utils.ResponseHelper;
 
@@ -26,243 +21,174 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
-import okhttp3.ResponseBody;
-import retrofit2.Response;
 
 class FilesImpl implements Files {
 	private AuthHelper authHelper;
 	private ConnectionManager connectionManager;
+	private long deadline;
 
 	FilesImpl(AuthHelper authHelper) {
+		this(authHelper, 0);
+	}
+
+	FilesImpl(AuthHelper authHelper, long deadline) {
 		this.authHelper = authHelper;
+		this.deadline = deadline;
 		this.connectionManager = authHelper.getConnectionManager();
 	}
 
 	@Override
 	public <T> CompletableFuture<T> upload(String path, Class<T> resultType) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return uploadImpl(path, resultType);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> uploadImpl(path, resultType), deadline);
 	}
 
-	private <T> T uploadImpl(String path, Class<T> resultType) throws HiveException {
-		try {
-			HttpURLConnection connection = this.connectionManager.openURLConnection("/files/upload/" + path);
-			OutputStream outputStream = connection.getOutputStream();
-
-			if(resultType.isAssignableFrom(OutputStream.class)) {
-				UploadOutputStream uploader = new UploadOutputStream(connection, outputStream);
-				return resultType.cast(uploader);
-			} else if (resultType.isAssignableFrom(OutputStreamWriter.class)) {
-				OutputStreamWriter writer = new OutputStreamWriter(outputStream);
-				return resultType.cast(writer);
-			} else {
-				throw new HiveException("Not supported result type");
-			}
-		} catch (IOException e) {
-			throw new HiveException(e.getLocalizedMessage());
-		}
+	private <T> CompletableFuture<T> uploadImpl(String path, Class<T> resultType) {
+		PipedRequestBody body = this.connectionManager.newUploadBody();
+		return CallHelper.upload(body, this.connectionManager.getUploadApi().uploadFile(path, body),
+				response -> {
+					authHelper.checkResponseWithRetry(response);
+					return null;
+				}, resultType);
 	}
 
 	@Override
 	public <T> CompletableFuture<T> download(String path, Class<T> resultType) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> downloadImpl(path, resultType));
+		return CallHelper.compose(authHelper.checkValid(), () -> downloadImpl(path, resultType), deadline);
 	}
 
-	private <T> T downloadImpl(String remoteFile, Class<T> resultType) {
-		try {
-			Response<ResponseBody> response;
-
-			response = this.connectionManager.getFileApi()
-					.downloader(remoteFile)
-					.execute();
-			int code = response.code();
-			if(404 == code) {
-				throw new FileNotFoundException(FileNotFoundException.EXCEPTION);
-			}
-
-			authHelper.checkResponseWithRetry(response);
+	private <T> CompletableFuture<T> downloadImpl(String remoteFile, Class<T> resultType) {
+		return CallHelper.enqueue(this.connectionManager.getFileApi()
+				.downloader(remoteFile),
+				response -> {
+					int code = response.code();
+					if(404 == code) {
+						throw new FileNotFoundException(FileNotFoundException.EXCEPTION);
+					}
 
-			if(resultType.isAssignableFrom(Reader.class)) {
-				Reader reader = ResponseHelper.getToReader(response);
-				return resultType.cast(reader);
-			}
-			if (resultType.isAssignableFrom(InputStream.class)){
-				InputStream inputStream = ResponseHelper.getInputStream(response);
-				return resultType.cast(inputStream);
-			}
+					authHelper.checkResponseWithRetry(response);
 
-			throw new HiveException("Not supported result type");
-		} catch (HiveException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+					if(resultType.isAssignableFrom(Reader.class)) {
+						Reader reader = ResponseHelper.getToReader(response);
+						return resultType.cast(reader);
+					}
+					if (resultType.isAssignableFrom(InputStream.class)){
+						InputStream inputStream = ResponseHelper.getInputStream(response);
+						return resultType.cast(inputStream);
+					}
 
-		return null;
+					throw new HiveException("Not supported result type");
+				}, this.connectionManager);
 	}
 
 	@Override
 	public CompletableFuture<Boolean> delete(String remoteFile) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return deleteImpl(remoteFile);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> deleteImpl(remoteFile), deadline);
 	}
 
-	private Boolean deleteImpl(String remoteFile) throws HiveException {
+	private CompletableFuture<Boolean> deleteImpl(String remoteFile) {
 		try {
 			Map<String, String> map = new HashMap<>();
 			map.put("path", remoteFile);
 
 			String json = JsonUtil.serialize(map);
-			Response<ResponseBody> response;
-
-			response = this.connectionManager.getFileApi()
-					.deleteFolder(createJsonRequestBody(json))
-					.execute();
-			authHelper.checkResponseWithRetry(response);
-			return true;
+			return CallHelper.enqueue(this.connectionManager.getFileApi()
+					.deleteFolder(createJsonRequestBody(json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return true;
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<Boolean> move(String source, String dest) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return moveImpl(source, dest);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> moveImpl(source, dest), deadline);
 	}
 
-	private Boolean moveImpl(String source, String dest) throws HiveException {
+	private CompletableFuture<Boolean> moveImpl(String source, String dest) {
 		try {
 			Map<String, Object> map = new HashMap<>();
 			map.put("src_path", source);
 			map.put("dst_path", dest);
 
 			String json = JsonUtil.serialize(map);
-			Response<ResponseBody> response;
-
-			response = this.connectionManager.getFileApi()
-					.move(createJsonRequestBody(json))
-					.execute();
-			authHelper.checkResponseWithRetry(response);
-			return true;
+			return CallHelper.enqueue(this.connectionManager.getFileApi()
+					.move(createJsonRequestBody(json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return true;
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<Boolean> copy(String source, String dest) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return copyImpl(source, dest);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> copyImpl(source, dest), deadline);
 	}
 
-	private Boolean copyImpl(String source, String dest) throws HiveException {
+	private CompletableFuture<Boolean> copyImpl(String source, String dest) {
 		try {
 			Map<String, Object> map = new HashMap<>();
 			map.put("src_path", source);
 			map.put("dst_path", dest);
 
 			String json = JsonUtil.serialize(map);
-			Response<ResponseBody> response;
-
-			response = this.connectionManager.getFileApi()
-					.copy(createJsonRequestBody(json))
-					.execute();
-			authHelper.checkResponseWithRetry(response);
-			return true;
+			return CallHelper.enqueue(this.connectionManager.getFileApi()
+					.copy(createJsonRequestBody(json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return true;
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public CompletableFuture<String> hash(String remoteFile) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return hashImp(remoteFile);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> hashImp(remoteFile), deadline);
 	}
 
-	private String hashImp(String remoteFile) throws HiveException {
-		try {
-			Response response = this.connectionManager.getFileApi()
-					.hash(remoteFile)
-					.execute();
-			authHelper.checkResponseWithRetry(response);
-			JsonNode ret = ResponseHelper.getValue(response, JsonNode.class);
-			return ret.get("SHA256").toString();
-		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
-		}
+	private CompletableFuture<String> hashImp(String remoteFile) {
+		return CallHelper.enqueueHedged(this.connectionManager.getFileApi()
+				.hash(remoteFile),
+				response -> {
+					authHelper.checkResponseWithRetry(response);
+					JsonNode ret = ResponseHelper.getValue(response, JsonNode.class);
+					return ret.get("SHA256").toString();
+				}, this.connectionManager);
 	}
 
 	@Override
 	public CompletableFuture<List<FileInfo>> list(String folder) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return listImpl(folder);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> listImpl(folder), deadline);
 	}
 
-	private List<FileInfo> listImpl(String folder) throws HiveException {
-		try {
-			Response<FilesList> response = this.connectionManager.getFileApi()
-					.files(folder).execute();
-
-			authHelper.checkResponseWithRetry(response);
-			return response.body().getFiles();
-		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
-		}
+	private CompletableFuture<List<FileInfo>> listImpl(String folder) {
+		return CallHelper.enqueueHedged(this.connectionManager.getFileApi()
+				.files(folder),
+				response -> {
+					authHelper.checkResponseWithRetry(response);
+					return response.body().getFiles();
+				}, this.connectionManager);
 	}
 
 	@Override
 	public CompletableFuture<FileInfo> stat(String path) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return statImpl(path);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> statImpl(path), deadline);
 	}
 
-	private FileInfo statImpl(String path) throws HiveException {
-		try {
-			Response<FileInfo> response = this.connectionManager.getFileApi()
-					.getProperties(path).execute();
-
-			authHelper.checkResponseWithRetry(response);
-			return response.body();
-		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
-		}
+	private CompletableFuture<FileInfo> statImpl(String path) {
+		return CallHelper.enqueueHedged(this.connectionManager.getFileApi()
+				.getProperties(path),
+				response -> {
+					authHelper.checkResponseWithRetry(response);
+					return response.body();
+				}, this.connectionManager);
 	}
 
 	private RequestBody createJsonRequestBody(String json) {
@@ -2,6 +2,8 @@ package org.elastos.hive;
 
 import org.elastos.did.DIDDocument;
 
+import java.util.concurrent.Executor;
+
 public interface HiveContext {
 	/**
 	 * token cache path
@@ -24,4 +26,28 @@ public interface HiveContext {
 	 * @return
 	 */
 	String getAuthorization(String jwtToken);
+
+	/**
+	 * The executor running the network calls of the SDK. Returns null by default,
+	 * which uses a virtual thread per task on JDK 21 and later, otherwise a
+	 * dedicated cached thread pool.
+	 *
+	 * @return the executor, or null to use the default one
+	 */
+	default Executor getExecutor() {
+		return null;
+	}
+
+	/**
+	 * The store of the access token of a vault. Returns null by default, which
+	 * keeps the tokens of all the vaults in a single indexed file under the
+	 * local data directory.
+	 *
+	 * @param ownerDid the owner did of the vault
+	 * @param provider the provider address of the vault
+	 * @return the token store, or null to use the default one
+	 */
+	default Persistent getTokenStore(String ownerDid, String provider) {
+		return null;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive;
+
+import org.elastos.hive.exception.HiveException;
+import org.elastos.hive.utils.CryptoUtil;
+import org.elastos.hive.utils.LogUtil;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * The default token store: the tokens of all the vaults are kept in one
+ * {@link TokenLog} per data directory, so restoring the token of a vault is
+ * a lookup in memory instead of a file read.
+ */
+class IndexedAuthInfoStore implements Persistent {
+	private final String key;
+	private final String tokenDir;
+
+	IndexedAuthInfoStore(String ownerDid, String provider, String storePath) {
+		this.key = CryptoUtil.getSHA256(ownerDid.trim() + provider.trim());
+		this.tokenDir = String.format("%s/%s", storePath, "token");
+	}
+
+	@Override
+	public JSONObject parseFrom() throws HiveException {
+		try {
+			String content = TokenLog.open(tokenDir).get(key);
+			return content != null ? new JSONObject(content) : new JSONObject();
+		} catch (IOException | JSONException e) {
+			throw new HiveException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void upateContent(JSONObject conetnt) throws HiveException {
+		try {
+			TokenLog.open(tokenDir).put(key, conetnt.toString());
+		} catch (IOException e) {
+			throw new HiveException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void flush() throws HiveException {
+		try {
+			TokenLog.open(tokenDir).sync();
+		} catch (IOException e) {
+			throw new HiveException(e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof IndexedAuthInfoStore))
+			return false;
+
+		IndexedAuthInfoStore other = (IndexedAuthInfoStore) o;
+		return key.equals(other.key) && tokenDir.equals(other.tokenDir);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(key, tokenDir);
+	}
+
+	@Override
+	public void deleteContent() {
+		try {
+			TokenLog.open(tokenDir).remove(key);
+		} catch (IOException e) {
+			LogUtil.e("Failed to delete the token: " + e.getMessage());
+		}
+	}
+}
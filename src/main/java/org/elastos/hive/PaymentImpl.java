@@ -43,7 +43,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private PricingInfo getAllPricingPlansImp() throws HiveException {
@@ -55,7 +55,7 @@ public class PaymentImpl implements Payment {
 			String ret = ResponseHelper.getValue(response, String.class);
 			return PricingInfo.deserialize(ret);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -67,7 +67,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private PricingPlan getPricingPlansImp(String planName) throws HiveException {
@@ -79,7 +79,7 @@ public class PaymentImpl implements Payment {
 			String ret = ResponseHelper.getValue(response, String.class);
 			return PricingPlan.deserialize(ret);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -91,7 +91,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private String placeOrderImp(String priceName) throws HiveException {
@@ -106,7 +106,7 @@ public class PaymentImpl implements Payment {
 			JsonNode ret = ResponseHelper.getValue(response, JsonNode.class);
 			return ret.get("order_id").textValue();
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -118,7 +118,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private boolean payOrderImp(String orderId, List<String> txids) throws HiveException {
@@ -133,7 +133,7 @@ public class PaymentImpl implements Payment {
 			authHelper.checkResponseWithRetry(response);
 			return true;
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -145,7 +145,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private Order getOrderImp(String orderId) throws HiveException {
@@ -157,7 +157,7 @@ public class PaymentImpl implements Payment {
 			JsonNode ret = ResponseHelper.getValue(response, JsonNode.class);
 			return Order.deserialize(ret.get("order_info").toString());
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -169,7 +169,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private List<Order> getAllOrdersImp() throws HiveException {
@@ -183,7 +183,7 @@ public class PaymentImpl implements Payment {
 			List<Order> orders = mapper.readValue(ret.get("order_info_list").toString(),new TypeReference<List<Order>>(){});
 			return orders;
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -195,7 +195,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 
@@ -211,7 +211,7 @@ public class PaymentImpl implements Payment {
 			if(null == ret) return null;
 			return UsingPlan.deserialize(ret.toString());
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -223,7 +223,7 @@ public class PaymentImpl implements Payment {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private String getPaymentVersionImp() throws HiveException {
@@ -235,7 +235,7 @@ public class PaymentImpl implements Payment {
 			JsonNode ret = ResponseHelper.getValue(response, JsonNode.class);
 			return ret.get("version").textValue();
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -25,11 +25,42 @@ package org.elastos.hive;
 import org.elastos.hive.exception.HiveException;
 import org.json.JSONObject;
 
-interface Persistent {
+/**
+ * Storage of the access token of a vault, so a vault opened again restores
+ * its token instead of signing in.
+ *
+ * The stores of the same token should be equal: the updates are written in
+ * background, and a store only sees the pending updates of the equal ones.
+ */
+public interface Persistent {
+	/**
+	 * Read the stored token.
+	 *
+	 * @return the stored content, or an empty object if nothing is stored
+	 * @throws HiveException
+	 */
 	JSONObject parseFrom() throws HiveException;
 
+	/**
+	 * Store the token, replacing the previous content.
+	 *
+	 * @param conetnt the content to store
+	 * @throws HiveException
+	 */
 	void upateContent(JSONObject conetnt) throws HiveException;
 
+	/**
+	 * Remove the stored token.
+	 */
 	void deleteContent();
 
+	/**
+	 * Make the previous updates durable. The tokens are written in background,
+	 * each batch of updates ends with a flush of the stores it touched.
+	 *
+	 * @throws HiveException
+	 */
+	default void flush() throws HiveException {
+	}
+
 }
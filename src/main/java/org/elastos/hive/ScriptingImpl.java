@@ -5,24 +5,19 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import org.elastos.hive.connection.ConnectionManager;
+import org.elastos.hive.connection.PipedRequestBody;
 import org.elastos.hive.exception.FileNotFoundException;
 import org.elastos.hive.exception.HiveException;
-import org.elastos.hive.files.UploadOutputStream;
 import org.elastos.hive.scripting.Condition;
 import org.elastos.hive.scripting.Executable;
 import org.elastos.hive.utils.JsonUtil;
 import org.elastos.hive.utils.ResponseHelper;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.net.HttpURLConnection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
@@ -32,9 +27,15 @@ import retrofit2.Response;
 class ScriptingImpl implements Scripting {
 	private AuthHelper authHelper;
 	private ConnectionManager connectionManager;
+	private long deadline;
 
 	ScriptingImpl(AuthHelper authHelper) {
+		this(authHelper, 0);
+	}
+
+	ScriptingImpl(AuthHelper authHelper, long deadline) {
 		this.authHelper = authHelper;
+		this.deadline = deadline;
 		this.connectionManager = authHelper.getConnectionManager();
 	}
 
@@ -45,16 +46,10 @@ class ScriptingImpl implements Scripting {
 
 	@Override
 	public CompletableFuture<Boolean> registerScript(String name, Condition condition, Executable executable) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return registerScriptImpl(name, condition, executable);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> registerScriptImpl(name, condition, executable), deadline);
 	}
 
-	private boolean registerScriptImpl(String name, Condition condition, Executable executable) throws HiveException {
+	private CompletableFuture<Boolean> registerScriptImpl(String name, Condition condition, Executable executable) {
 		try {
 			Map<String, Object> map = new HashMap<>();
 			map.put("name", name);
@@ -64,30 +59,23 @@ class ScriptingImpl implements Scripting {
 
 			String json = JsonUtil.serialize(map);
 
-			Response<ResponseBody> response;
-			response = this.connectionManager.getScriptingApi()
-					.registerScript(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-
-			authHelper.checkResponseWithRetry(response);
-			return true;
-		} catch (IOException e) {
-			throw new HiveException(new HiveException(e.getMessage()));
+			return CallHelper.enqueue(this.connectionManager.getScriptingApi()
+					.registerScript(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return true;
+					}, this.connectionManager);
+		} catch (Exception e) {
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public <T> CompletableFuture<T> callScript(String name,  JsonNode params, String appDid, Class<T> resultType) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return callScriptImpl(name, params, appDid, resultType);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> callScriptImpl(name, params, appDid, resultType), deadline);
 	}
 
-	private <T> T callScriptImpl(String scriptName, JsonNode params, String appDid, Class<T> clazz) throws HiveException {
+	private <T> CompletableFuture<T> callScriptImpl(String scriptName, JsonNode params, String appDid, Class<T> clazz) {
 		try {
 			Map<String, Object> map = new HashMap<>();
 			map.put("name", scriptName);
@@ -104,91 +92,61 @@ class ScriptingImpl implements Scripting {
 			}
 
 			String json = JsonUtil.serialize(map);
-			Response<ResponseBody> response;
-
-			response = this.connectionManager.getScriptingApi()
-					.callScript(RequestBody.create(MediaType.parse("Content-Type, application/json"), json))
-					.execute();
-			authHelper.checkResponseWithRetry(response);
-			return ResponseHelper.getValue(response, clazz);
+			return CallHelper.enqueue(this.connectionManager.getScriptingApi()
+					.callScript(RequestBody.create(MediaType.parse("Content-Type, application/json"), json)),
+					response -> {
+						authHelper.checkResponseWithRetry(response);
+						return ResponseHelper.getValue(response, clazz);
+					}, this.connectionManager);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			return CallHelper.failed(e);
 		}
 	}
 
 	@Override
 	public <T> CompletableFuture<T> uploadFile(String transactionId, Class<T> resultType) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return uploadFileImpl(transactionId, resultType);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> uploadFileImpl(transactionId, resultType), deadline);
 	}
 
-	private <T> T uploadFileImpl(String transactionId, Class<T> resultType) throws HiveException {
-		try {
-			if(null != transactionId) {
-				HttpURLConnection connection = this.connectionManager.openURLConnection("/scripting/run_script_upload/" + transactionId);
-				OutputStream outputStream = connection.getOutputStream();
-
-				if(resultType.isAssignableFrom(OutputStream.class)) {
-					UploadOutputStream uploader = new UploadOutputStream(connection, outputStream);
-					return resultType.cast(uploader);
-				} else if (resultType.isAssignableFrom(OutputStreamWriter.class)) {
-					OutputStreamWriter writer = new OutputStreamWriter(outputStream);
-					return resultType.cast(writer);
-				} else {
-					throw new HiveException("Not supported result type");
-				}
-			} else {
-				throw new HiveException("Can not get transaction id");
-			}
-		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
-		}
+	private <T> CompletableFuture<T> uploadFileImpl(String transactionId, Class<T> resultType) {
+		if(null == transactionId)
+			return CallHelper.failed(new HiveException("Can not get transaction id"));
+
+		PipedRequestBody body = this.connectionManager.newUploadBody();
+		return CallHelper.upload(body, this.connectionManager.getUploadApi().uploadScriptFile(transactionId, body),
+				response -> {
+					authHelper.checkResponseWithRetry(response);
+					return null;
+				}, resultType);
 	}
 
 	@Override
 	public <T> CompletableFuture<T> downloadFile(String transactionId, Class<T> resultType) {
-		return authHelper.checkValid().thenApplyAsync(aVoid -> {
-			try {
-				return downloadFileImpl(transactionId, resultType);
-			} catch (HiveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return CallHelper.compose(authHelper.checkValid(), () -> downloadFileImpl(transactionId, resultType), deadline);
 	}
 
-	private <T> T downloadFileImpl(String transactionId, Class<T> resultType) throws HiveException {
-		try {
-			if(null != transactionId) {
-				Response<ResponseBody> response;
-
-				response = this.connectionManager.getScriptingApi()
-						.callDownload(transactionId)
-						.execute();
-				if (response == null)
-					throw new HiveException(HiveException.ERROR);
-
-				authHelper.checkResponseWithRetry(response);
-
-				if(resultType.isAssignableFrom(Reader.class)) {
-					Reader reader = ResponseHelper.getToReader(response);
-					return resultType.cast(reader);
-				}
-				if (resultType.isAssignableFrom(InputStream.class)){
-					InputStream inputStream = ResponseHelper.getInputStream(response);
-					return resultType.cast(inputStream);
-				}
-				throw new HiveException("Not supported result type");
-			} else {
-				throw new HiveException("Can not get transaction id");
-			}
-		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
-		}
+	private <T> CompletableFuture<T> downloadFileImpl(String transactionId, Class<T> resultType) {
+		if(null == transactionId)
+			return CallHelper.failed(new HiveException("Can not get transaction id"));
+
+		return CallHelper.enqueue(this.connectionManager.getScriptingApi()
+				.callDownload(transactionId),
+				response -> {
+					if (response == null)
+						throw new HiveException(HiveException.ERROR);
+
+					authHelper.checkResponseWithRetry(response);
+
+					if(resultType.isAssignableFrom(Reader.class)) {
+						Reader reader = ResponseHelper.getToReader(response);
+						return resultType.cast(reader);
+					}
+					if (resultType.isAssignableFrom(InputStream.class)){
+						InputStream inputStream = ResponseHelper.getInputStream(response);
+						return resultType.cast(inputStream);
+					}
+					throw new HiveException("Not supported result type");
+				}, this.connectionManager);
 	}
 
 	private <T> T callDownloadScriptImpl(String scriptName, JsonNode params, String appDid, Class<T> clazz) throws HiveException {
@@ -220,7 +178,7 @@ class ScriptingImpl implements Scripting {
 			authHelper.checkResponseWithRetry(response);
 			return ResponseHelper.getValue(response, clazz);
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive;
+
+import org.elastos.hive.utils.LogUtil;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tokens of all the vaults of a data directory, in a single append-only
+ * file indexed in memory.
+ *
+ * Each update appends a line to the file and a removal appends a tombstone,
+ * made durable by the next {@link #sync()}. The file is read once when opened,
+ * and rewritten with the live entries only once the outdated lines outnumber
+ * them; the new file is synced before replacing the old one, and the
+ * directory after, so the replacement survives a crash too.
+ */
+final class TokenLog {
+	private static final String FILE_NAME = "tokens.log";
+	private static final String KEY = "key";
+	private static final String VALUE = "value";
+	private static final int MIN_COMPACT_RECORDS = 256;
+
+	private static final Map<String, TokenLog> logs = new ConcurrentHashMap<>();
+
+	private final File dir;
+	private final File file;
+	private final Map<String, String> index = new HashMap<>();
+	private FileOutputStream stream;
+	private Writer writer;
+	private int records;
+	private boolean dirty;
+
+	/**
+	 * Read the token log of the directory, {@link #open(String)} shares it instead.
+	 */
+	TokenLog(File dir) throws IOException {
+		this.dir = dir;
+		this.file = new File(dir, FILE_NAME);
+
+		if (!dir.exists() && !dir.mkdirs())
+			throw new IOException("Failed to create the token directory " + dir);
+
+		boolean clean = load();
+		List<File> migrated = importTokenFiles();
+		if (!clean || !migrated.isEmpty() || needsCompaction())
+			compact();
+		else
+			openWriter();
+
+		// The token files are only dropped once the log holding their content is written.
+		for (File tokenFile : migrated)
+			Files.deleteIfExists(tokenFile.toPath());
+	}
+
+	/**
+	 * Get the token log of the directory, shared by all the vaults storing their tokens in it.
+	 *
+	 * @param tokenDir the directory of the token log
+	 * @return the token log
+	 * @throws IOException if the log can not be read
+	 */
+	static TokenLog open(String tokenDir) throws IOException {
+		File dir = new File(tokenDir).getAbsoluteFile();
+		try {
+			return logs.computeIfAbsent(dir.getPath(), path -> {
+				try {
+					return new TokenLog(dir);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	synchronized String get(String key) {
+		return index.get(key);
+	}
+
+	synchronized void put(String key, String value) throws IOException {
+		JSONObject record = new JSONObject();
+		record.put(KEY, key);
+		record.put(VALUE, value);
+		// The index goes first: the append may compact the file, which writes the index out.
+		index.put(key, value);
+		append(record.toString());
+	}
+
+	synchronized void remove(String key) throws IOException {
+		if (!index.containsKey(key))
+			return;
+
+		JSONObject record = new JSONObject();
+		record.put(KEY, key);
+		index.remove(key);
+		append(record.toString());
+	}
+
+	/**
+	 * Write the appended records to the disk.
+	 */
+	synchronized void sync() throws IOException {
+		if (!dirty)
+			return;
+
+		if (writer == null)
+			openWriter();
+		writer.flush();
+		stream.getFD().sync();
+		dirty = false;
+	}
+
+	private void append(String line) throws IOException {
+		// The writer is missing if a compaction failed to open it again.
+		if (writer == null)
+			openWriter();
+		writer.write(line);
+		writer.write('\n');
+		dirty = true;
+		records++;
+
+		if (needsCompaction())
+			compact();
+	}
+
+	private boolean needsCompaction() {
+		return records >= MIN_COMPACT_RECORDS && records > 2 * index.size();
+	}
+
+	/**
+	 * Rebuild the index from the file.
+	 *
+	 * @return false if some lines are unreadable, such as a line cut by a crash
+	 */
+	private boolean load() throws IOException {
+		if (!file.exists())
+			return true;
+
+		boolean clean = true;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+
+				try {
+					JSONObject record = new JSONObject(line);
+					String key = record.getString(KEY);
+					if (record.has(VALUE))
+						index.put(key, record.getString(VALUE));
+					else
+						index.remove(key);
+					records++;
+				} catch (JSONException e) {
+					LogUtil.e("Skip an unreadable record of " + file);
+					clean = false;
+				}
+			}
+		}
+		return clean;
+	}
+
+	/**
+	 * Import the tokens stored one file per vault by the previous versions.
+	 *
+	 * @return the imported files
+	 */
+	private List<File> importTokenFiles() {
+		List<File> imported = new ArrayList<>();
+		File[] files = dir.listFiles((parent, name) -> name.matches("[0-9a-f]{64}"));
+		if (files == null)
+			return imported;
+
+		for (File tokenFile : files) {
+			try {
+				String content = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8);
+				if (!content.isEmpty() && !index.containsKey(tokenFile.getName()))
+					index.put(tokenFile.getName(), new JSONObject(content).toString());
+				imported.add(tokenFile);
+			} catch (IOException | JSONException e) {
+				LogUtil.e("Skip the token file " + tokenFile + ": " + e.getMessage());
+			}
+		}
+		return imported;
+	}
+
+	private void compact() throws IOException {
+		File tmp = new File(dir, FILE_NAME + ".tmp");
+		try (FileOutputStream tmpStream = new FileOutputStream(tmp)) {
+			Writer out = new BufferedWriter(new OutputStreamWriter(tmpStream, StandardCharsets.UTF_8));
+			for (Map.Entry<String, String> entry : index.entrySet()) {
+				JSONObject record = new JSONObject();
+				record.put(KEY, entry.getKey());
+				record.put(VALUE, entry.getValue());
+				out.write(record.toString());
+				out.write('\n');
+			}
+			out.flush();
+			tmpStream.getFD().sync();
+		}
+
+		if (writer != null) {
+			writer.close();
+			writer = null;
+			stream = null;
+		}
+
+		boolean moved = false;
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+			syncDirectory();
+		} finally {
+			// Append to the new file, or to the old one if it could not be replaced.
+			openWriter();
+			if (moved) {
+				records = index.size();
+				dirty = false;
+			}
+		}
+	}
+
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// A directory can not be synced on every platform, such as Windows.
+		}
+	}
+
+	private void openWriter() throws IOException {
+		stream = new FileOutputStream(file, true);
+		writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+	}
+}
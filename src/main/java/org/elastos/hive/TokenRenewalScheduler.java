@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared timer of the background token renewals.
+ *
+ * The timer thread only triggers the renewals, the sign in itself runs on
+ * the executor passed by the caller.
+ */
+final class TokenRenewalScheduler {
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "hive-token-renewal");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private TokenRenewalScheduler() {
+	}
+
+	/**
+	 * Compute the delay before renewing a token.
+	 *
+	 * @param lifetime the remaining lifetime of the token in milliseconds
+	 * @param ratio the fraction of the lifetime after which to renew
+	 * @param jitter the random spread, as a fraction of the lifetime
+	 * @return the delay in milliseconds, or -1 if no renewal should be scheduled
+	 */
+	static long renewalDelay(long lifetime, double ratio, double jitter) {
+		if (ratio <= 0 || lifetime <= 0)
+			return -1;
+
+		double spread = jitter > 0 ? ThreadLocalRandom.current().nextDouble(-jitter, jitter) : 0;
+		double fraction = Math.min(Math.max(ratio + spread, 0), 1);
+		return (long) (lifetime * fraction);
+	}
+
+	static ScheduledFuture<?> schedule(Runnable renewal, long delay) {
+		return scheduler.schedule(renewal, delay, TimeUnit.MILLISECONDS);
+	}
+}
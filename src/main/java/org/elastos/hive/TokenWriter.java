@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive;
+
+import org.elastos.hive.exception.HiveException;
+import org.elastos.hive.utils.LogUtil;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background writer of the tokens, so the requests never wait for the disk.
+ *
+ * The updates of a store are coalesced, only the last one is written, and
+ * the stores touched by a batch are flushed once at its end. The stores are
+ * told apart by {@link Object#equals(Object)}, so two instances over the same
+ * token share their pending update, and {@link #read(Persistent)} returns it
+ * until it is written. The pending updates are written when the JVM exits.
+ */
+final class TokenWriter {
+	private static final long FLUSH_DELAY = 200;
+
+	private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "hive-token-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// The last update of each store, null standing for a removal.
+	private static final Map<Persistent, JSONObject> pending = new LinkedHashMap<>();
+	private static boolean scheduled;
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(TokenWriter::flush, "hive-token-writer-exit"));
+	}
+
+	private TokenWriter() {
+	}
+
+	/**
+	 * Queue the update of a store.
+	 *
+	 * @param store the token store
+	 * @param content the content to store, or null to remove it
+	 */
+	static void submit(Persistent store, JSONObject content) {
+		synchronized (pending) {
+			// The latest store of a token goes last, with its latest content.
+			pending.remove(store);
+			pending.put(store, content);
+			if (scheduled)
+				return;
+			scheduled = true;
+		}
+		writer.schedule(TokenWriter::flush, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Read the token of a store, the pending update first. Serialized with the
+	 * flushes, so a batch being written is never missed.
+	 *
+	 * @param store the token store
+	 * @return the stored content, or an empty object if nothing is stored
+	 * @throws HiveException
+	 */
+	static synchronized JSONObject read(Persistent store) throws HiveException {
+		synchronized (pending) {
+			if (pending.containsKey(store)) {
+				JSONObject content = pending.get(store);
+				return content != null ? new JSONObject(content.toString()) : new JSONObject();
+			}
+		}
+		return store.parseFrom();
+	}
+
+	/**
+	 * Write the pending updates, serialized with the other flushes.
+	 */
+	static synchronized void flush() {
+		List<Map.Entry<Persistent, JSONObject>> batch;
+		synchronized (pending) {
+			batch = new ArrayList<>(pending.entrySet());
+			pending.clear();
+			scheduled = false;
+		}
+
+		for (Map.Entry<Persistent, JSONObject> update : batch) {
+			try {
+				if (update.getValue() != null)
+					update.getKey().upateContent(update.getValue());
+				else
+					update.getKey().deleteContent();
+			} catch (HiveException e) {
+				LogUtil.e("Failed to store the token: " + e.getMessage());
+			}
+		}
+
+		for (Map.Entry<Persistent, JSONObject> update : batch) {
+			try {
+				update.getKey().flush();
+			} catch (HiveException e) {
+				LogUtil.e("Failed to flush the token store: " + e.getMessage());
+			}
+		}
+	}
+}
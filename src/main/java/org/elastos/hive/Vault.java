@@ -2,6 +2,7 @@ package org.elastos.hive;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Vault class
@@ -22,18 +23,37 @@ public class Vault {
 	private VaultHelper vaultHelper;
 
 	Vault(AuthHelper authHelper, String providerAddress, String ownerDid) {
+		this(authHelper, providerAddress, ownerDid, 0);
+	}
+
+	private Vault(AuthHelper authHelper, String providerAddress, String ownerDid, long deadline) {
 		this.authHelper = authHelper;
 		this.providerAddress = providerAddress;
 		this.ownerDid = ownerDid;
 
-		this.files = new FilesImpl(authHelper);
-		this.database = new DatabaseImpl(authHelper);
-		this.scripting = new ScriptingImpl(authHelper);
+		this.files = new FilesImpl(authHelper, deadline);
+		this.database = new DatabaseImpl(authHelper, deadline);
+		this.scripting = new ScriptingImpl(authHelper, deadline);
 		this.payment = new PaymentImpl(authHelper);
 		this.version = new VersionImpl(authHelper);
 		this.vaultHelper = new VaultHelper(authHelper);
 	}
 
+	/**
+	 * Get a view of this vault whose database, files and scripting calls fail
+	 * with DeadlineExceededException when they take longer than the timeout.
+	 * The view shares the connection and the access token of this vault.
+	 * @param timeout the deadline of each call, 0 for none
+	 * @param unit the unit of the timeout
+	 * @return the vault view.
+	 */
+	public Vault withDeadline(long timeout, TimeUnit unit) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("Invalid deadline: " + timeout);
+
+		return new Vault(this.authHelper, this.providerAddress, this.ownerDid, unit.toMillis(timeout));
+	}
+
 	public CompletableFuture<String> getNodeVersion() {
 		return this.version.getVersion();
 	}
@@ -47,7 +67,7 @@ public class Vault {
 	 * @return	the vault provider address.
 	 */
 	public String getProviderAddress() {
-		return this.providerAddress;
+		return this.authHelper.getNodeUrl();
 	}
 
 	/**
@@ -124,12 +144,27 @@ public class Vault {
 
 	CompletableFuture<Vault> requestToCreateVault() {
 		return this.vaultHelper.requestToCreateVault()
-				.thenApplyAsync(aBoolean -> aBoolean?Vault.this:null);
+				.thenApplyAsync(aBoolean -> aBoolean?Vault.this:null, authHelper.getExecutor());
 	}
 
 	CompletableFuture<Vault> checkVaultExist() {
 		return this.vaultHelper.vaultExist()
-				.thenApplyAsync(aBoolean -> aBoolean?null:Vault.this);
+				.thenApplyAsync(aBoolean -> aBoolean?null:Vault.this, authHelper.getExecutor());
+	}
+
+	/**
+	 * Get the vault ready to serve: restore its token, or sign in.
+	 */
+	CompletableFuture<Vault> authenticate() {
+		return this.authHelper.checkValid().thenApply(v -> this);
+	}
+
+	/**
+	 * Stop the background work of the vault, such as the renewal of its access
+	 * token. The vault can still be used, its token is then renewed on demand.
+	 */
+	public void close() {
+		authHelper.close();
 	}
 
 	public void revokeAccessToken() {
@@ -30,7 +30,7 @@ class VaultHelper {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 
 	}
 
@@ -42,7 +42,7 @@ class VaultHelper {
 			authHelper.checkResponseWithRetry(response);
 			return true;
 		} catch (Exception e) {
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
@@ -53,7 +53,7 @@ class VaultHelper {
 			} catch (HiveException e) {
 				throw new CompletionException(e);
 			}
-		});
+		}, authHelper.getExecutor());
 	}
 
 	private boolean vaultExistImpl() throws HiveException {
@@ -68,7 +68,7 @@ class VaultHelper {
 			return (null!=ret);
 		} catch (Exception e) {
 			e.printStackTrace();
-			throw new HiveException(e.getLocalizedMessage());
+			throw CallHelper.toHiveException(e);
 		}
 	}
 
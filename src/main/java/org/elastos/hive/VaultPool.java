@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.elastos.hive.connection.model.VaultPoolConfig;
+
+/**
+ * Vaults of a client by owner DID and provider, so their connections and
+ * tokens are reused from one request to the other.
+ *
+ * The concurrent requests for a vault not pooled yet share the opening of
+ * the vault. The least recently used vaults are dropped beyond the maximum
+ * size, and the idle ones are dropped at the next access to the pool.
+ */
+final class VaultPool {
+	private final VaultPoolConfig config;
+	private final Map<String, Slot> slots;
+
+	private static final class Slot {
+		private final CompletableFuture<Vault> vault = new CompletableFuture<>();
+		private long lastAccess;
+	}
+
+	VaultPool(VaultPoolConfig config) {
+		this.config = config;
+		this.slots = new LinkedHashMap<String, Slot>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+				if (size() <= VaultPool.this.config.getMaxSize())
+					return false;
+
+				release(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Get the pooled vault, or open it.
+	 *
+	 * @param ownerDid the owner DID of the vault
+	 * @param provider the preferred provider address, or null for the providers of the DID
+	 * @param opener opens the vault when it is not pooled
+	 * @return the vault
+	 */
+	CompletableFuture<Vault> obtain(String ownerDid, String provider, Supplier<CompletableFuture<Vault>> opener) {
+		if (!config.isEnabled())
+			return opener.get();
+
+		String key = keyOf(ownerDid, provider);
+		Slot slot;
+		boolean owner = false;
+
+		synchronized (slots) {
+			long now = System.currentTimeMillis();
+			evictIdle(now);
+
+			slot = slots.get(key);
+			if (slot == null) {
+				slot = new Slot();
+				slots.put(key, slot);
+				owner = true;
+			}
+			slot.lastAccess = now;
+		}
+
+		if (owner) {
+			Slot opened = slot;
+			try {
+				opener.get().whenComplete((vault, e) -> {
+					if (e != null)
+						fail(key, opened, e);
+					else
+						opened.vault.complete(vault);
+				});
+			} catch (RuntimeException e) {
+				fail(key, opened, e);
+			}
+		}
+
+		// Callers must not be able to complete the pooled future.
+		return slot.vault.thenApply(Function.identity());
+	}
+
+	/**
+	 * Pool a vault opened outside of the pool, such as a vault just created.
+	 */
+	void put(String ownerDid, String provider, Vault vault) {
+		if (!config.isEnabled())
+			return;
+
+		Slot slot = new Slot();
+		slot.vault.complete(vault);
+		synchronized (slots) {
+			slot.lastAccess = System.currentTimeMillis();
+			Slot previous = slots.put(keyOf(ownerDid, provider), slot);
+			if (previous != null)
+				release(previous);
+		}
+	}
+
+	private void fail(String key, Slot slot, Throwable e) {
+		// A failed opening is not pooled, the next request tries again.
+		synchronized (slots) {
+			slots.remove(key, slot);
+		}
+		slot.vault.completeExceptionally(e);
+	}
+
+	private void evictIdle(long now) {
+		// Iterated from the least recently used, the first active vault ends the idle ones.
+		Iterator<Slot> it = slots.values().iterator();
+		while (it.hasNext()) {
+			Slot slot = it.next();
+			if (now - slot.lastAccess < config.getIdleTimeout())
+				break;
+
+			it.remove();
+			release(slot);
+		}
+	}
+
+	private static void release(Slot slot) {
+		slot.vault.thenAccept(Vault::close);
+	}
+
+	private static String keyOf(String ownerDid, String provider) {
+		return provider != null ? ownerDid + "@" + provider : ownerDid;
+	}
+}
@@ -3,20 +3,22 @@ package org.elastos.hive;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.elastos.hive.connection.ConnectionManager;
-import org.elastos.hive.exception.HiveException;
 import org.elastos.hive.utils.ResponseHelper;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import okhttp3.ResponseBody;
 import retrofit2.Response;
 
 class VersionImpl implements Version{
 	private ConnectionManager connectionManager;
+	private Executor executor;
 
 	VersionImpl(AuthHelper authHelper) {
 		this.connectionManager = authHelper.getConnectionManager();
+		this.executor = authHelper.getExecutor();
 	}
 
 	@Override
@@ -30,10 +32,9 @@ class VersionImpl implements Version{
 				String version = ret.get("version").textValue();
 				return version;
 			} catch (Exception e) {
-				HiveException exception = new HiveException(e.getLocalizedMessage());
-				throw new CompletionException(exception);
+				throw new CompletionException(CallHelper.toHiveException(e));
 			}
-		});
+		}, executor);
 	}
 
 	@Override
@@ -47,10 +48,9 @@ class VersionImpl implements Version{
 				String commit = ret.get("commit_hash").textValue();
 				return commit;
 			} catch (Exception e) {
-				HiveException exception = new HiveException(e.getLocalizedMessage());
-				throw new CompletionException(exception);
+				throw new CompletionException(CallHelper.toHiveException(e));
 			}
-		});
+		}, executor);
 	}
 
 }
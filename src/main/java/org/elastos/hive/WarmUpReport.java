@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link Client#warmUp(java.util.Collection)}: one entry per owner
+ * DID with the time its vault took to get ready, or the reason it failed.
+ */
+public class WarmUpReport {
+	private final List<Entry> entries;
+	private final long elapsed;
+
+	public static class Entry {
+		private final String ownerDid;
+		private final String providerAddress;
+		private final long elapsed;
+		private final Throwable error;
+
+		Entry(String ownerDid, String providerAddress, long elapsed, Throwable error) {
+			this.ownerDid = ownerDid;
+			this.providerAddress = providerAddress;
+			this.elapsed = elapsed;
+			this.error = error;
+		}
+
+		public String getOwnerDid() {
+			return ownerDid;
+		}
+
+		/**
+		 * The provider the vault is on, null if it could not be found.
+		 */
+		public String getProviderAddress() {
+			return providerAddress;
+		}
+
+		/**
+		 * The time to get the vault ready, or to fail, in milliseconds.
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		public boolean isSucceeded() {
+			return error == null;
+		}
+
+		/**
+		 * The failure of the vault, null if it succeeded.
+		 */
+		public Throwable getError() {
+			return error;
+		}
+	}
+
+	WarmUpReport(List<Entry> entries, long elapsed) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * The entries, in the order of the owner DIDs given to the warm up.
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public List<Entry> getFailures() {
+		List<Entry> failures = new ArrayList<>();
+		for (Entry entry : entries) {
+			if (!entry.isSucceeded())
+				failures.add(entry);
+		}
+		return failures;
+	}
+
+	public boolean isAllSucceeded() {
+		for (Entry entry : entries) {
+			if (!entry.isSucceeded())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The time of the whole warm up, in milliseconds.
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An interceptor which can also run around an asynchronous exchange.
+ *
+ * A transport with a non-blocking exchange, such as the JDK HttpClient one,
+ * runs the enqueued calls through {@link #interceptAsync} when every
+ * interceptor of the client implements it, so no thread waits for the node.
+ * Otherwise the calls go through {@link Interceptor#intercept} as usual.
+ */
+interface AsyncInterceptor extends Interceptor {
+    /**
+     * Intercept the call, proceeding with the exchange asynchronously.
+     *
+     * @param chain the asynchronous chain
+     * @return the future of the response, failed with an IOException
+     */
+    CompletableFuture<Response> interceptAsync(Chain chain);
+
+    interface Chain {
+        Request request();
+
+        Call call();
+
+        /**
+         * The executor for the blocking work of the interceptors, such as a
+         * token refresh or the logging of a response body.
+         */
+        Executor executor();
+
+        CompletableFuture<Response> proceedAsync(Request request);
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * The IOException a failed future completed with.
+     */
+    static IOException toIOException(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null)
+            cause = cause.getCause();
+
+        if (cause instanceof IOException)
+            return (IOException) cause;
+        if (cause instanceof CancellationException)
+            return new IOException("Canceled");
+        return new IOException(cause);
+    }
+}
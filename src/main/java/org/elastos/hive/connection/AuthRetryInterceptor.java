@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.AuthToken;
+import org.elastos.hive.network.NonReplayable;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+/**
+ * Replays a request once after the node answered 401 and the access token has
+ * been refreshed.
+ *
+ * The node rejects an unauthorized request before handling it, so the database,
+ * files and scripting calls are safe to replay, including the writes. Only the
+ * calls annotated with {@link NonReplayable} are passed through as they are.
+ * This interceptor must run before {@link HeaderInterceptor}, so the replayed
+ * request picks up the refreshed token.
+ */
+class AuthRetryInterceptor implements AsyncInterceptor {
+    private static final int UNAUTHORIZED = 401;
+
+    private final Supplier<AuthToken> tokenSupplier;
+    private final AuthTokenRefresher refresher;
+
+    AuthRetryInterceptor(Supplier<AuthToken> tokenSupplier, AuthTokenRefresher refresher) {
+        this.tokenSupplier = tokenSupplier;
+        this.refresher = refresher;
+    }
+
+    @Override
+    public Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        AuthToken sentToken = tokenSupplier.get();
+
+        Response response = chain.proceed(request);
+        if (response.code() != UNAUTHORIZED || !isReplayable(request))
+            return response;
+
+        AuthToken refreshed = refresher.refresh(sentToken);
+        if (refreshed == null || refreshed == sentToken)
+            return response;
+
+        response.close();
+        return chain.proceed(request);
+    }
+
+    @Override
+    public CompletableFuture<Response> interceptAsync(AsyncInterceptor.Chain chain) {
+        Request request = chain.request();
+        AuthToken sentToken = tokenSupplier.get();
+
+        return chain.proceedAsync(request).thenCompose(response -> {
+            if (response.code() != UNAUTHORIZED || !isReplayable(request))
+                return CompletableFuture.completedFuture(response);
+
+            // The refresh may sign in again, it blocks and runs on the executor.
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return refresher.refresh(sentToken);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, chain.executor()).thenCompose(refreshed -> {
+                if (refreshed == null || refreshed == sentToken)
+                    return CompletableFuture.completedFuture(response);
+
+                response.close();
+                return chain.proceedAsync(request);
+            });
+        });
+    }
+
+    static boolean isReplayable(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        return invocation == null
+                || !invocation.method().isAnnotationPresent(NonReplayable.class);
+    }
+}
@@ -22,45 +22,113 @@
 
 package org.elastos.hive.connection;
 
+import org.elastos.hive.AuthToken;
 import org.elastos.hive.utils.LogUtil;
+import org.elastos.hive.connection.model.ApiGroup;
 import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.connection.model.HeaderConfig;
+import org.elastos.hive.connection.model.TimeoutConfig;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 class BaseServiceUtil {
-    private static final int DEFAULT_TIMEOUT = 30;
 
-    static <S> S createService(Class<S> serviceClass, @NotNull String baseUrl,
-                               BaseServiceConfig baseServiceConfig) {
-        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
-                .connectTimeout(DEFAULT_TIMEOUT, TimeUnit.SECONDS)
-                .readTimeout(DEFAULT_TIMEOUT, TimeUnit.SECONDS);
+    static OkHttpClient createClient(@NotNull String baseUrl, BaseServiceConfig baseServiceConfig, ApiGroup group,
+                                     Supplier<AuthToken> tokenSupplier, AuthTokenRefresher refresher) {
+        return createClient(baseUrl, baseServiceConfig, group, null, null, tokenSupplier, refresher);
+    }
 
-        Retrofit.Builder retrofitBuilder = new Retrofit.Builder()
-                .baseUrl(baseUrl)
-                .addConverterFactory(StringConverterFactory.create())
-                .addConverterFactory(NobodyConverterFactory.create())
-                .addConverterFactory(GsonConverterFactory.create());
+    /**
+     * @param vault the key of the vault sending the calls, used to share the concurrency
+     *              limit of the provider fairly between its vaults, or null for no limit
+     * @param retrier the retrier of the provider, or null if the calls are not retried
+     */
+    static OkHttpClient createClient(@NotNull String baseUrl, BaseServiceConfig baseServiceConfig, ApiGroup group,
+                                     Object vault, Retrier retrier, Supplier<AuthToken> tokenSupplier,
+                                     AuthTokenRefresher refresher) {
+        OkHttpClient.Builder clientBuilder = HttpClientRegistry.obtain(baseUrl, baseServiceConfig)
+                .newBuilder();
+
+        if (baseServiceConfig != null) {
+            TimeoutConfig timeoutConfig = baseServiceConfig.getTimeoutConfig(group);
+            clientBuilder.connectTimeout(timeoutConfig.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                    .readTimeout(timeoutConfig.getReadTimeout(), TimeUnit.MILLISECONDS)
+                    .writeTimeout(timeoutConfig.getWriteTimeout(), TimeUnit.MILLISECONDS)
+                    .callTimeout(timeoutConfig.getCallTimeout(), TimeUnit.MILLISECONDS);
+        }
 
         clientBuilder.interceptors().clear();
-        if (baseServiceConfig != null && baseServiceConfig.getHeaderConfig() != null) {
-            HeaderInterceptor headerInterceptor = new HeaderInterceptor(baseServiceConfig.getHeaderConfig());
-            clientBuilder.interceptors().add(headerInterceptor);
+        // The enqueued calls are retried by the SDK from a timer, see Retrier.
+        if (retrier != null && !isEnqueued(group))
+            clientBuilder.interceptors().add(new RetryInterceptor(retrier));
+        if (baseServiceConfig == null || baseServiceConfig.getCircuitBreakerConfig().isEnabled()) {
+            CircuitBreaker breaker = HttpClientRegistry.obtainBreaker(baseUrl, baseServiceConfig);
+            clientBuilder.interceptors().add(new CircuitBreakerInterceptor(breaker));
         }
 
+        AuthRetryInterceptor authRetryInterceptor = new AuthRetryInterceptor(tokenSupplier, refresher);
+        clientBuilder.interceptors().add(authRetryInterceptor);
+
+        // Long transfers fail for reasons of their own, they do not count for the endpoint health.
+        if (group != ApiGroup.UPLOAD)
+            clientBuilder.interceptors().add(new ProviderHealthInterceptor(HttpClientRegistry.obtainHealth(baseUrl)));
+
+        // Inside the replay after 401, so the token refresh does not run under a permit.
+        if (vault != null && isLimitedWhenExecuted(group) && (baseServiceConfig == null
+                || baseServiceConfig.getConcurrencyLimitConfig().isEnabled())) {
+            ConcurrencyLimiter limiter = HttpClientRegistry.obtainLimiter(baseUrl, baseServiceConfig);
+            clientBuilder.interceptors().add(new ConcurrencyLimitInterceptor(limiter, vault));
+        }
+
+        HeaderConfig headerConfig = baseServiceConfig != null ? baseServiceConfig.getHeaderConfig() : null;
+        HeaderInterceptor headerInterceptor = new HeaderInterceptor(headerConfig, tokenSupplier);
+        clientBuilder.interceptors().add(headerInterceptor);
+
         if (LogUtil.debug) {
             NetworkLogInterceptor networkLogInterceptor = new NetworkLogInterceptor();
             clientBuilder.interceptors().add(networkLogInterceptor);
         }
 
-        OkHttpClient client = clientBuilder.build();
-        Retrofit retrofit = retrofitBuilder.client(client).build();
+        return clientBuilder.build();
+    }
+
+    /**
+     * The database, files and scripting calls are enqueued by the SDK, which
+     * admits them with the concurrency limiter before they reach the OkHttp
+     * dispatcher and retries them from a timer.
+     */
+    private static boolean isEnqueued(ApiGroup group) {
+        return group == ApiGroup.DATABASE || group == ApiGroup.FILES || group == ApiGroup.SCRIPTING;
+    }
+
+    /**
+     * The groups whose executed calls are limited by the interceptor. The sign
+     * in calls are not limited, as the token refresh of a limited call would
+     * wait for a permit, and the long uploads say nothing about the node load.
+     */
+    private static boolean isLimitedWhenExecuted(ApiGroup group) {
+        return !isEnqueued(group) && group != ApiGroup.AUTH && group != ApiGroup.UPLOAD;
+    }
 
-        return retrofit.create(serviceClass);
+    static Retrofit createRetrofit(@NotNull String baseUrl, OkHttpClient client) {
+        return createRetrofit(baseUrl, client, null);
+    }
+
+    static Retrofit createRetrofit(@NotNull String baseUrl, OkHttpClient client, HttpTransport transport) {
+        Call.Factory callFactory = transport != null ? transport.createCallFactory(client) : client;
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .addConverterFactory(StringConverterFactory.create())
+                .addConverterFactory(NobodyConverterFactory.create())
+                .addConverterFactory(GsonConverterFactory.create())
+                .callFactory(callFactory)
+                .build();
     }
-}
\ No newline at end of file
+}
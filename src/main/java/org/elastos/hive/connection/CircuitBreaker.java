@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.CircuitBreakerConfig;
+
+/**
+ * Circuit breaker of one provider, shared by all its vaults.
+ *
+ * Closed, it records the outcome of the last calls in a ring and opens when
+ * their failure rate reaches the threshold. Open, it rejects the calls until
+ * the open duration has elapsed, then turns half open and admits a few probe
+ * calls: the breaker closes if they all succeed and opens again otherwise.
+ */
+final class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final CircuitBreakerConfig config;
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+    private int recorded;
+    private int next;
+    private int failures;
+    private long openedAt;
+    private int probes;
+    private int probeSuccesses;
+
+    CircuitBreaker(CircuitBreakerConfig config) {
+        this.config = config;
+        this.outcomes = new boolean[config.getWindowSize()];
+    }
+
+    /**
+     * Admit a call.
+     *
+     * @return true if the call is a probe of the half open breaker
+     * @throws CircuitOpenException if the breaker is open
+     */
+    synchronized boolean acquire() throws CircuitOpenException {
+        if (state == State.CLOSED)
+            return false;
+
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < config.getOpenDuration())
+                throw new CircuitOpenException("The provider is unavailable, circuit breaker open");
+            state = State.HALF_OPEN;
+            probes = 0;
+            probeSuccesses = 0;
+        }
+
+        if (probes >= config.getHalfOpenCalls())
+            throw new CircuitOpenException("The provider is unavailable, circuit breaker half open");
+        probes++;
+        return true;
+    }
+
+    /**
+     * Record the outcome of an admitted call.
+     *
+     * @param probe the value returned by {@link #acquire()}
+     * @param success false if the call failed because of the provider
+     */
+    synchronized void onResult(boolean probe, boolean success) {
+        if (probe) {
+            if (state != State.HALF_OPEN)
+                return;
+            if (!success) {
+                open();
+            } else if (++probeSuccesses >= config.getHalfOpenCalls()) {
+                close();
+            }
+            return;
+        }
+
+        if (state != State.CLOSED)
+            return;
+
+        if (recorded == outcomes.length) {
+            if (!outcomes[next])
+                failures--;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = success;
+        if (!success)
+            failures++;
+        next = (next + 1) % outcomes.length;
+
+        if (recorded >= config.getMinimumCalls()
+                && failures >= config.getFailureRateThreshold() * recorded)
+            open();
+    }
+
+    /**
+     * Give back the permit of a call whose outcome says nothing about the provider,
+     * like a canceled call.
+     *
+     * @param probe the value returned by {@link #acquire()}
+     */
+    synchronized void onIgnored(boolean probe) {
+        if (probe && state == State.HALF_OPEN)
+            probes--;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
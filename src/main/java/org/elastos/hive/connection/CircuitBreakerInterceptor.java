@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Fails the calls at once while the circuit breaker of the provider is open,
+ * and reports the outcome of the admitted calls to the breaker.
+ */
+class CircuitBreakerInterceptor implements AsyncInterceptor {
+    private static final int SERVER_ERROR = 500;
+
+    private final CircuitBreaker breaker;
+
+    CircuitBreakerInterceptor(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Response intercept(Interceptor.Chain chain) throws IOException {
+        boolean probe = breaker.acquire();
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (RequestRejectedException e) {
+            // Shed by the SDK, the provider has not been reached.
+            breaker.onIgnored(probe);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled()) {
+                breaker.onIgnored(probe);
+            } else {
+                breaker.onResult(probe, false);
+            }
+            throw e;
+        }
+
+        breaker.onResult(probe, response.code() < SERVER_ERROR);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<Response> interceptAsync(AsyncInterceptor.Chain chain) {
+        boolean probe;
+        try {
+            probe = breaker.acquire();
+        } catch (CircuitOpenException e) {
+            return AsyncInterceptor.failed(e);
+        }
+
+        return chain.proceedAsync(chain.request()).whenComplete((response, error) -> {
+            if (error == null)
+                breaker.onResult(probe, response.code() < SERVER_ERROR);
+            else if (chain.call().isCanceled()
+                    || AsyncInterceptor.toIOException(error) instanceof RequestRejectedException)
+                breaker.onIgnored(probe);
+            else
+                breaker.onResult(probe, false);
+        });
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Runs each executed call under the concurrency limit of its provider, and
+ * feeds the limit with the round trip time and outcome of the call.
+ *
+ * The enqueued calls are admitted by the SDK before being enqueued, they do
+ * not go through this interceptor. It runs inside {@link AuthRetryInterceptor},
+ * so a call does not hold its permit while the token is refreshed.
+ */
+class ConcurrencyLimitInterceptor implements Interceptor {
+    private final ConcurrencyLimiter limiter;
+    private final Object vault;
+
+    ConcurrencyLimitInterceptor(ConcurrencyLimiter limiter, Object vault) {
+        this.limiter = limiter;
+        this.vault = vault;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        limiter.acquire(vault, () -> chain.call().isCanceled());
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            // A canceled call says nothing about the node load.
+            if (chain.call().isCanceled())
+                limiter.releaseIgnored();
+            else
+                limiter.release(System.nanoTime() - start, true);
+            throw e;
+        }
+
+        limiter.release(System.nanoTime() - start, ConcurrencyLimiter.isOverloaded(response.code()));
+        return response;
+    }
+}
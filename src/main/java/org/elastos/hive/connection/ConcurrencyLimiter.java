@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.ConcurrencyLimitConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Adaptive (AIMD) limit on the concurrent calls to one provider.
+ *
+ * The calls over the limit wait in one queue per vault, and the queues are
+ * served in turn, so a vault sending a burst does not starve the other vaults
+ * sharing the node. The enqueued calls are admitted before they are handed
+ * to the OkHttp dispatcher, see {@link #acquire(Object)}, so the waiting
+ * calls hold no thread.
+ */
+public final class ConcurrencyLimiter {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int RTT_WINDOW = 256;
+    private static final long CANCEL_CHECK_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ConcurrencyLimitConfig config;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Object, ArrayDeque<Waiter>> queues = new HashMap<>();
+    private final ArrayDeque<Object> turns = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long noLoadRtt;
+    private long windowMinRtt = Long.MAX_VALUE;
+    private int windowSamples;
+
+    ConcurrencyLimiter(ConcurrencyLimitConfig config) {
+        this.config = config;
+        this.limit = config.getInitialLimit();
+    }
+
+    /**
+     * Take a permit, waiting in the queue of the vault if the limit is reached.
+     *
+     * The returned future completes once the permit is granted, which must
+     * then be given back with {@link #release} or {@link #releaseIgnored}. It
+     * fails with a {@link RequestRejectedException} if the queue is full or
+     * the wait timed out. Cancelling it leaves the queue.
+     *
+     * @param vault the key of the vault sending the call
+     * @return the future of the permit
+     */
+    public CompletableFuture<Void> acquire(Object vault) {
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (waiting == 0 && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (waiting >= config.getQueueSize()) {
+                CompletableFuture<Void> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(
+                        new RequestRejectedException("Too many concurrent requests to the provider"));
+                return rejected;
+            }
+
+            waiter = new Waiter(vault);
+            ArrayDeque<Waiter> queue = queues.get(vault);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(vault, queue);
+                turns.add(vault);
+            }
+            queue.add(waiter);
+            waiting++;
+        } finally {
+            lock.unlock();
+        }
+
+        ScheduledFuture<?> timer = Timer.scheduler.schedule(() -> {
+            waiter.permit.completeExceptionally(
+                    new RequestRejectedException("Timed out waiting for the concurrency limit of the provider"));
+        }, config.getQueueTimeout(), TimeUnit.MILLISECONDS);
+        waiter.permit.whenComplete((aVoid, e) -> {
+            timer.cancel(false);
+            if (e != null)
+                abandon(waiter);
+        });
+        return waiter.permit;
+    }
+
+    /**
+     * Take a permit, blocking the thread while waiting in the queue of the vault.
+     *
+     * @param vault the key of the vault sending the call
+     * @param canceled tells if the call has been canceled while waiting
+     * @throws RequestRejectedException if the queue is full or the wait timed out
+     * @throws InterruptedIOException if the thread was interrupted or the call canceled
+     */
+    void acquire(Object vault, BooleanSupplier canceled) throws IOException {
+        CompletableFuture<Void> permit = acquire(vault);
+        try {
+            while (true) {
+                try {
+                    permit.get(CANCEL_CHECK_INTERVAL, TimeUnit.NANOSECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    if (canceled.getAsBoolean()) {
+                        cancel(permit);
+                        throw new InterruptedIOException("Canceled");
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(permit);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the concurrency limit");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Leave the queue, or give the permit back if it has been granted meanwhile.
+     *
+     * @param permit the future returned by {@link #acquire(Object)}
+     */
+    public void cancel(CompletableFuture<Void> permit) {
+        if (!permit.cancel(false) && !permit.isCompletedExceptionally())
+            releaseIgnored();
+    }
+
+    /**
+     * Give the permit back and adjust the limit with the outcome of the call.
+     *
+     * @param rtt the round trip time of the call in nanoseconds
+     * @param dropped true if the call timed out or the node reported an overload
+     */
+    public void release(long rtt, boolean dropped) {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            update(rtt, dropped);
+            granted = releaseLocked();
+        } finally {
+            lock.unlock();
+        }
+        grant(granted);
+    }
+
+    /**
+     * Give the permit back without adjusting the limit, for a call which says
+     * nothing about the node load, such as a canceled one.
+     */
+    public void releaseIgnored() {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            granted = releaseLocked();
+        } finally {
+            lock.unlock();
+        }
+        grant(granted);
+    }
+
+    /**
+     * Tell if the node answered it is overloaded, which counts as a dropped call.
+     *
+     * @param code the HTTP status code of the response
+     */
+    public static boolean isOverloaded(int code) {
+        return code == TOO_MANY_REQUESTS || code == SERVICE_UNAVAILABLE;
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rtt, boolean dropped) {
+        if (!dropped) {
+            windowMinRtt = Math.min(windowMinRtt, rtt);
+            if (noLoadRtt == 0 || rtt < noLoadRtt)
+                noLoadRtt = rtt;
+            // Follow the changes of the node speed by restarting from the minimum of the last window.
+            if (++windowSamples >= RTT_WINDOW) {
+                noLoadRtt = windowMinRtt;
+                windowMinRtt = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+        }
+
+        boolean congested = dropped || (noLoadRtt > 0 && rtt > noLoadRtt * config.getRttTolerance());
+        if (congested) {
+            limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(config.getMaxLimit(), limit + 1);
+        }
+    }
+
+    private List<Waiter> releaseLocked() {
+        List<Waiter> granted = null;
+        inFlight--;
+        while (waiting > 0 && inFlight < (int) limit) {
+            Object vault = turns.poll();
+            ArrayDeque<Waiter> queue = queues.get(vault);
+            Waiter next = queue.poll();
+            if (queue.isEmpty()) {
+                queues.remove(vault);
+            } else {
+                turns.add(vault);
+            }
+            waiting--;
+            inFlight++;
+            if (granted == null)
+                granted = new ArrayList<>();
+            granted.add(next);
+        }
+        return granted;
+    }
+
+    /**
+     * Complete the granted permits out of the lock, as their callers go on
+     * from the completion. A permit canceled or timed out meanwhile is given back.
+     */
+    private void grant(List<Waiter> granted) {
+        if (granted == null)
+            return;
+        for (Waiter waiter : granted) {
+            if (!waiter.permit.complete(null))
+                releaseIgnored();
+        }
+    }
+
+    private void abandon(Waiter waiter) {
+        lock.lock();
+        try {
+            ArrayDeque<Waiter> queue = queues.get(waiter.vault);
+            if (queue != null && queue.remove(waiter)) {
+                waiting--;
+                if (queue.isEmpty()) {
+                    queues.remove(waiter.vault);
+                    turns.remove(waiter.vault);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+        final Object vault;
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+
+        Waiter(Object vault) {
+            this.vault = vault;
+        }
+    }
+
+    private static final class Timer {
+        static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hive-limiter-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
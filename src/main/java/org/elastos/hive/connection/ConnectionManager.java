@@ -23,132 +23,216 @@
 package org.elastos.hive.connection;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.elastos.hive.Constance;
+import org.elastos.hive.AuthToken;
+import org.elastos.hive.connection.model.ApiGroup;
 import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.connection.model.RetryPolicy;
+import org.elastos.hive.connection.model.TimeoutConfig;
 import org.elastos.hive.network.AuthApi;
 import org.elastos.hive.network.DatabaseApi;
 import org.elastos.hive.network.FilesApi;
 import org.elastos.hive.network.PaymentApi;
 import org.elastos.hive.network.ScriptingApi;
+import org.elastos.hive.network.UploadApi;
 import org.elastos.hive.network.VaultApi;
 import org.elastos.hive.network.VersionApi;
 
-public class ConnectionManager {
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
 
-	private AuthApi authApi;
-	private FilesApi fileApi;
-	private DatabaseApi databaseApi;
-	private VersionApi versionApi;
-	private ScriptingApi scriptingApi;
-	private PaymentApi paymentApi;
-	private VaultApi vaultApi;
+/**
+ * The API services of a vault. The services of the current endpoint are kept
+ * in one holder, which is swapped at once when the vault moves to another
+ * endpoint, so a request thread always gets the services of one endpoint.
+ */
+public class ConnectionManager {
 
-	private String vaultBaseUrl;
-	private BaseServiceConfig vaultConfig = new BaseServiceConfig.Builder().build() ;
+	private volatile Endpoint endpoint;
+	private volatile AuthToken authToken;
+	private volatile AuthTokenRefresher tokenRefresher;
 
 	public ConnectionManager(String baseUrl, BaseServiceConfig baseServiceConfig) {
 		resetVaultApi(baseUrl, baseServiceConfig);
 	}
 
 	public AuthApi getAuthApi() {
-		if (authApi == null)
-			authApi = BaseServiceUtil.createService(AuthApi.class,
-					this.vaultBaseUrl, this.vaultConfig);
-		return authApi;
+		return this.endpoint.getService(ApiGroup.AUTH, AuthApi.class);
 	}
 
 	public FilesApi getFileApi() {
-		if (fileApi == null)
-			fileApi = BaseServiceUtil.createService(FilesApi.class,
-					this.vaultBaseUrl, this.vaultConfig);
-		return fileApi;
+		return this.endpoint.getService(ApiGroup.FILES, FilesApi.class);
 	}
 
 	public DatabaseApi getDatabaseApi() {
-		if (databaseApi == null)
-			databaseApi = BaseServiceUtil.createService(DatabaseApi.class,
-					this.vaultBaseUrl, this.vaultConfig);
-		return databaseApi;
+		return this.endpoint.getService(ApiGroup.DATABASE, DatabaseApi.class);
 	}
 
 	public ScriptingApi getScriptingApi() {
-		if (scriptingApi == null)
-			scriptingApi = BaseServiceUtil.createService(ScriptingApi.class,
-					this.vaultBaseUrl, this.vaultConfig);
-		return scriptingApi;
+		return this.endpoint.getService(ApiGroup.SCRIPTING, ScriptingApi.class);
 	}
 
 	public VersionApi getVersionApi() {
-		if (versionApi == null)
-			versionApi = BaseServiceUtil.createService(VersionApi.class,
-					this.vaultBaseUrl, this.vaultConfig);
-		return versionApi;
+		return this.endpoint.getService(ApiGroup.VERSION, VersionApi.class);
 	}
 
 	public PaymentApi getPaymentApi() {
-		if (paymentApi == null)
-			paymentApi = BaseServiceUtil.createService(PaymentApi.class,
-					this.vaultBaseUrl, this.vaultConfig);
-		return paymentApi;
+		return this.endpoint.getService(ApiGroup.PAYMENT, PaymentApi.class);
 	}
 
 	public VaultApi getVaultApi() {
-		if (vaultApi == null)
-			vaultApi = BaseServiceUtil.createService(VaultApi.class,
-					this.vaultBaseUrl, this.vaultConfig);
-		return vaultApi;
+		return this.endpoint.getService(ApiGroup.PAYMENT, VaultApi.class);
 	}
 
-	private void updateVaultConfig(BaseServiceConfig vaultConfig) {
-		this.vaultConfig = vaultConfig;
+	public UploadApi getUploadApi() {
+		return this.endpoint.getService(ApiGroup.UPLOAD, UploadApi.class);
 	}
 
-	private void updateVaultBaseUrl(String vaultBaseUrl) {
-		this.vaultBaseUrl = vaultBaseUrl;
+	/**
+	 * Get the request hedger of the provider.
+	 *
+	 * @return the hedger, or null if hedging is disabled
+	 */
+	public RequestHedger getHedger() {
+		Endpoint endpoint = this.endpoint;
+		BaseServiceConfig config = endpoint.config;
+		if (config == null || !config.getHedgingPolicy().isEnabled())
+			return null;
+		return HttpClientRegistry.obtainHedger(endpoint.baseUrl, config);
 	}
 
-	public void resetVaultApi(String baseUrl, BaseServiceConfig baseServiceConfig) {
-		authApi = null;
-		fileApi = null;
-		databaseApi = null;
-		versionApi = null;
-		scriptingApi = null;
-		paymentApi = null;
-		vaultApi = null;
-		updateVaultBaseUrl(baseUrl);
-		updateVaultConfig(baseServiceConfig);
+	/**
+	 * Get the concurrency limiter of the provider, admitting the enqueued calls.
+	 * This connection manager is the key of the vault in the limiter queues.
+	 *
+	 * @return the limiter, or null if the limit is disabled
+	 */
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		Endpoint endpoint = this.endpoint;
+		BaseServiceConfig config = endpoint.config;
+		if (config != null && !config.getConcurrencyLimitConfig().isEnabled())
+			return null;
+		return HttpClientRegistry.obtainLimiter(endpoint.baseUrl, config);
 	}
 
-	public String getVaultBaseUrl() {
-		return this.vaultBaseUrl;
+	/**
+	 * Get the retrier of the provider, deciding the retries of the enqueued
+	 * calls as well as the executed ones.
+	 *
+	 * @return the retrier, or null if the calls are not retried
+	 */
+	public Retrier getRetrier() {
+		return this.endpoint.retrier;
 	}
 
-	public String getAccessToken() {
-		return this.vaultConfig.getHeaderConfig().getAuthToken().getAccessToken();
+	private static Retrier createRetrier(String baseUrl, BaseServiceConfig config) {
+		RetryPolicy policy = config != null ? config.getRetryPolicy() : new RetryPolicy.Builder().build();
+		if (policy.getMaxAttempts() <= 1)
+			return null;
+		return new Retrier(policy, HttpClientRegistry.obtainRetryBudget(baseUrl, config));
 	}
 
-	public HttpURLConnection openURLConnection(String path) throws IOException {
-		String url = this.getVaultBaseUrl() + Constance.API_PATH + path;
-		HttpURLConnection httpURLConnection = (HttpURLConnection) new URL(url).openConnection();
-		httpURLConnection.setRequestMethod("POST");
-		httpURLConnection.setRequestProperty("User-Agent",
-				"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11");
-		httpURLConnection.setConnectTimeout(5000);
-		httpURLConnection.setReadTimeout(5000);
+	/**
+	 * Swap the access token used by all the API services.
+	 * The services are kept, the new token is applied from the next request on.
+	 *
+	 * @param authToken the new access token
+	 */
+	public void setAuthToken(AuthToken authToken) {
+		this.authToken = authToken;
+	}
 
-		httpURLConnection.setDoOutput(true);
-		httpURLConnection.setDoInput(true);
-		httpURLConnection.setUseCaches(false);
-		httpURLConnection.setRequestProperty("Transfer-Encoding", "chunked");
-		httpURLConnection.setRequestProperty("Connection", "Keep-Alive");
-		httpURLConnection.setRequestProperty("Authorization", "token " + this.getAccessToken());
+	public AuthToken getAuthToken() {
+		return this.authToken;
+	}
 
-		httpURLConnection.setChunkedStreamingMode(0);
+	/**
+	 * Set the callback used to renew the access token when the node answers 401,
+	 * after which the rejected request is replayed once.
+	 *
+	 * @param tokenRefresher the token refresher
+	 */
+	public void setTokenRefresher(AuthTokenRefresher tokenRefresher) {
+		this.tokenRefresher = tokenRefresher;
+	}
+
+	private AuthToken refreshAuthToken(AuthToken rejected) throws IOException {
+		AuthTokenRefresher refresher = this.tokenRefresher;
+		return refresher != null ? refresher.refresh(rejected) : null;
+	}
 
-		return httpURLConnection;
+	/**
+	 * Move the API services to another endpoint. The calls already started
+	 * complete on the previous endpoint, the next ones go to the new one.
+	 *
+	 * @param baseUrl the address of the endpoint
+	 * @param baseServiceConfig the service config
+	 */
+	public synchronized void resetVaultApi(String baseUrl, BaseServiceConfig baseServiceConfig) {
+		this.endpoint = new Endpoint(baseUrl, baseServiceConfig);
+		if (baseServiceConfig != null
+				&& baseServiceConfig.getHeaderConfig() != null
+				&& baseServiceConfig.getHeaderConfig().getAuthToken() != null)
+			setAuthToken(baseServiceConfig.getHeaderConfig().getAuthToken());
 	}
 
+	public String getVaultBaseUrl() {
+		return this.endpoint.baseUrl;
+	}
+
+	public String getAccessToken() {
+		return this.authToken.getAccessToken();
+	}
+
+	/**
+	 * Create the streaming body of an upload, idle for at most the write
+	 * timeout of the upload calls.
+	 */
+	public PipedRequestBody newUploadBody() {
+		BaseServiceConfig config = this.endpoint.config;
+		long idleTimeout = config != null
+				? config.getTimeoutConfig(ApiGroup.UPLOAD).getWriteTimeout()
+				: TimeoutConfig.DEFAULT_WRITE_TIMEOUT;
+		return new PipedRequestBody(idleTimeout);
+	}
+
+	/**
+	 * The API services of one endpoint, created on first use.
+	 */
+	private final class Endpoint {
+		final String baseUrl;
+		final BaseServiceConfig config;
+		final Retrier retrier;
+
+		private final Map<ApiGroup, Retrofit> retrofits = new EnumMap<>(ApiGroup.class);
+		private final Map<Class<?>, Object> services = new ConcurrentHashMap<>();
+
+		Endpoint(String baseUrl, BaseServiceConfig config) {
+			this.baseUrl = baseUrl;
+			this.config = config;
+			this.retrier = createRetrier(baseUrl, config);
+		}
+
+		<T> T getService(ApiGroup group, Class<T> type) {
+			Object service = services.get(type);
+			if (service == null)
+				service = services.computeIfAbsent(type, key -> getRetrofit(group).create(key));
+			return type.cast(service);
+		}
+
+		private synchronized Retrofit getRetrofit(ApiGroup group) {
+			Retrofit retrofit = retrofits.get(group);
+			if (retrofit == null) {
+				OkHttpClient client = BaseServiceUtil.createClient(baseUrl, config, group, ConnectionManager.this,
+						retrier, ConnectionManager.this::getAuthToken, ConnectionManager.this::refreshAuthToken);
+				HttpTransport transport = config != null ? config.getTransport() : null;
+				retrofit = BaseServiceUtil.createRetrofit(baseUrl, client, transport);
+				retrofits.put(group, retrofit);
+			}
+			return retrofit;
+		}
+	}
 }
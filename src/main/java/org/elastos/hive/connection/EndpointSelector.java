@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.Constance;
+import org.elastos.hive.connection.model.BaseServiceConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Chooses the endpoint of a vault among the "HiveVault" services declared
+ * by the owner DID document.
+ *
+ * The healthy endpoint with the lowest round trip time is chosen: an endpoint
+ * is unhealthy while its circuit breaker is open or its error rate is at least
+ * one half. The current endpoint is only left for a healthy one which is
+ * clearly faster, so the vault does not flip between similar nodes. The
+ * round trip times and error rates are shared by all the vaults of a provider.
+ *
+ * Every endpoint, the current one included, is probed in background at most
+ * once per probe interval, and the round trip times compared are the ones of
+ * these probes only. The current endpoint is thus scored like the others, and
+ * a slow upload or a replay after 401 does not make the vault switch, which
+ * would cost a new sign in.
+ */
+public final class EndpointSelector {
+    private static final double MAX_HEALTHY_ERROR_RATE = 0.5;
+    private static final double SWITCH_RATIO = 0.8;
+    private static final long PROBE_INTERVAL = 30 * 1000;
+
+    private final List<String> endpoints;
+    private final BaseServiceConfig config;
+    private volatile String current;
+
+    public EndpointSelector(List<String> endpoints, BaseServiceConfig config) {
+        if (endpoints == null || endpoints.isEmpty())
+            throw new IllegalArgumentException("No endpoint to select");
+
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        this.config = config;
+        this.current = endpoints.get(0);
+    }
+
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Measure all the endpoints in background, so the first choices are not blind.
+     */
+    public void probe() {
+        for (String endpoint : endpoints) {
+            if (HttpClientRegistry.obtainHealth(endpoint).claimProbe(PROBE_INTERVAL))
+                probe(endpoint);
+        }
+    }
+
+    /**
+     * Get the endpoint the calls of the vault should go to.
+     *
+     * @return the endpoint address
+     */
+    public String select() {
+        if (endpoints.size() == 1)
+            return current;
+
+        probe();
+
+        String selected = current;
+        double selectedRtt = rttOf(selected);
+        boolean selectedHealthy = isHealthy(selected);
+
+        for (String endpoint : endpoints) {
+            if (endpoint.equals(selected) || !isHealthy(endpoint))
+                continue;
+
+            double rtt = rttOf(endpoint);
+            if (!selectedHealthy || (rtt >= 0 && (selectedRtt < 0 || rtt < selectedRtt * SWITCH_RATIO))) {
+                selected = endpoint;
+                selectedRtt = rtt;
+                selectedHealthy = true;
+            }
+        }
+
+        // Nothing healthy: stay on the endpoint failing the least.
+        if (!selectedHealthy) {
+            for (String endpoint : endpoints) {
+                if (errorRateOf(endpoint) < errorRateOf(selected))
+                    selected = endpoint;
+            }
+        }
+
+        current = selected;
+        return selected;
+    }
+
+    private boolean isHealthy(String endpoint) {
+        if (errorRateOf(endpoint) >= MAX_HEALTHY_ERROR_RATE)
+            return false;
+        if (config != null && !config.getCircuitBreakerConfig().isEnabled())
+            return true;
+        return HttpClientRegistry.obtainBreaker(endpoint, config).getState() != CircuitBreaker.State.OPEN;
+    }
+
+    private double rttOf(String endpoint) {
+        return HttpClientRegistry.obtainHealth(endpoint).getRtt();
+    }
+
+    private double errorRateOf(String endpoint) {
+        return HttpClientRegistry.obtainHealth(endpoint).getErrorRate();
+    }
+
+    private void probe(String endpoint) {
+        ProviderHealth health = HttpClientRegistry.obtainHealth(endpoint);
+        Request request = new Request.Builder()
+                .url(HttpClientRegistry.providerKey(endpoint) + Constance.API_PATH + "/hive/version")
+                .build();
+        long start = System.nanoTime();
+        HttpClientRegistry.obtain(endpoint, config).newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                health.recordProbe(System.nanoTime() - start, false);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                health.recordProbe(System.nanoTime() - start, response.code() < 500);
+                response.close();
+            }
+        });
+    }
+}
@@ -22,30 +22,45 @@
 
 package org.elastos.hive.connection;
 
+import org.elastos.hive.AuthToken;
 import org.elastos.hive.connection.model.HeaderConfig;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 
-public class HeaderInterceptor implements Interceptor {
+public class HeaderInterceptor implements AsyncInterceptor {
     private static final String AUTHORIZATION = "Authorization";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String ACCEPT_ENCODING = "Accept-Encoding";
 
     private final HeaderConfig headerConfig;
+    private final Supplier<AuthToken> tokenSupplier;
 
-    HeaderInterceptor(HeaderConfig headerConfig) {
+    /**
+     * The access token is read from the supplier on every request, so a refreshed
+     * token takes effect without rebuilding the client.
+     */
+    HeaderInterceptor(HeaderConfig headerConfig, Supplier<AuthToken> tokenSupplier) {
         this.headerConfig = headerConfig;
+        this.tokenSupplier = tokenSupplier;
     }
 
     @Override
-    public Response intercept(Chain chain) throws IOException {
+    public Response intercept(Interceptor.Chain chain) throws IOException {
+        return chain.proceed(addHeaders(chain.request()));
+    }
 
-        Request request = chain.request();
+    @Override
+    public CompletableFuture<Response> interceptAsync(AsyncInterceptor.Chain chain) {
+        return chain.proceedAsync(addHeaders(chain.request()));
+    }
 
+    private Request addHeaders(Request request) {
         //check & add Authorization header
         Request newRequest = addAuthHeader(request);
 
@@ -63,19 +78,16 @@ public class HeaderInterceptor implements Interceptor {
             newRequest = addAcceptEncoding(request);
         }
 
-        if (newRequest != null) {
-            return chain.proceed(newRequest);
-        } else {
-            return chain.proceed(request);
-        }
+        return newRequest != null ? newRequest : request;
     }
 
     private Request addAuthHeader(Request realRequest) {
-        if (headerConfig == null || headerConfig.getAuthToken() == null) {
+        AuthToken authToken = tokenSupplier.get();
+        if (authToken == null) {
             return realRequest;
         }
         return realRequest.newBuilder()
-                .addHeader(AUTHORIZATION, headerConfig.getAuthToken().getTokenType()+" " + headerConfig.getAuthToken().getAccessToken())
+                .addHeader(AUTHORIZATION, authToken.getTokenType()+" " + authToken.getAccessToken())
                 .build();
     }
 
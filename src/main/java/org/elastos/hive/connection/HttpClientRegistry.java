@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.connection.model.HttpProtocol;
+import org.elastos.hive.connection.model.TimeoutConfig;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Process-wide registry of the OkHttp clients used to talk with hive nodes.
+ *
+ * Every provider gets exactly one root client, so all the vaults and API services
+ * targeting the same node share its connection pool and dispatcher. Per-vault
+ * clients are derived from the root one with {@link OkHttpClient#newBuilder()},
+ * which keeps the pool and dispatcher shared. With HTTP/2 the calls to a node
+ * are multiplexed on the pooled connection instead of opening one per request.
+ * The registry also holds the concurrency limiter, circuit breaker, retry
+ * budget, request hedger and health of each provider.
+ */
+final class HttpClientRegistry {
+    private static final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+    private static final Map<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private static final Map<String, RetryBudget> retryBudgets = new ConcurrentHashMap<>();
+    private static final Map<String, RequestHedger> hedgers = new ConcurrentHashMap<>();
+    private static final Map<String, ProviderHealth> healths = new ConcurrentHashMap<>();
+
+    private HttpClientRegistry() {
+    }
+
+    /**
+     * Get the shared client of the provider, creating it on the first use.
+     * The pool and dispatcher settings of the first config win.
+     *
+     * @param baseUrl the provider address
+     * @param config the service config
+     * @return the shared client
+     */
+    static OkHttpClient obtain(@NotNull String baseUrl, BaseServiceConfig config) {
+        BaseServiceConfig cfg = config != null ? config : new BaseServiceConfig.Builder().build();
+        return clients.computeIfAbsent(providerKey(baseUrl), key -> createClient(cfg));
+    }
+
+    /**
+     * Get the concurrency limiter of the provider, shared by all its vaults.
+     * The limit settings of the first config win.
+     *
+     * @param baseUrl the provider address
+     * @param config the service config
+     * @return the shared limiter
+     */
+    static ConcurrencyLimiter obtainLimiter(@NotNull String baseUrl, BaseServiceConfig config) {
+        BaseServiceConfig cfg = config != null ? config : new BaseServiceConfig.Builder().build();
+        return limiters.computeIfAbsent(providerKey(baseUrl),
+                key -> new ConcurrencyLimiter(cfg.getConcurrencyLimitConfig()));
+    }
+
+    /**
+     * Get the circuit breaker of the provider, shared by all its vaults.
+     * The breaker settings of the first config win.
+     *
+     * @param baseUrl the provider address
+     * @param config the service config
+     * @return the shared circuit breaker
+     */
+    static CircuitBreaker obtainBreaker(@NotNull String baseUrl, BaseServiceConfig config) {
+        BaseServiceConfig cfg = config != null ? config : new BaseServiceConfig.Builder().build();
+        return breakers.computeIfAbsent(providerKey(baseUrl),
+                key -> new CircuitBreaker(cfg.getCircuitBreakerConfig()));
+    }
+
+    /**
+     * Get the retry budget of the provider, shared by all its vaults.
+     * The retry policy of the first config sets the budget.
+     *
+     * @param baseUrl the provider address
+     * @param config the service config
+     * @return the shared retry budget
+     */
+    static RetryBudget obtainRetryBudget(@NotNull String baseUrl, BaseServiceConfig config) {
+        BaseServiceConfig cfg = config != null ? config : new BaseServiceConfig.Builder().build();
+        return retryBudgets.computeIfAbsent(providerKey(baseUrl), key -> new RetryBudget(cfg.getRetryPolicy()));
+    }
+
+    /**
+     * Get the request hedger of the provider, shared by all its vaults.
+     * The hedging policy of the first config wins.
+     *
+     * @param baseUrl the provider address
+     * @param config the service config
+     * @return the shared request hedger
+     */
+    static RequestHedger obtainHedger(@NotNull String baseUrl, BaseServiceConfig config) {
+        BaseServiceConfig cfg = config != null ? config : new BaseServiceConfig.Builder().build();
+        return hedgers.computeIfAbsent(providerKey(baseUrl), key -> new RequestHedger(cfg.getHedgingPolicy()));
+    }
+
+    /**
+     * Get the health tracker of the provider, shared by all its vaults.
+     *
+     * @param baseUrl the provider address
+     * @return the shared health tracker
+     */
+    static ProviderHealth obtainHealth(@NotNull String baseUrl) {
+        return healths.computeIfAbsent(providerKey(baseUrl), key -> new ProviderHealth());
+    }
+
+    private static OkHttpClient createClient(BaseServiceConfig config) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(config.getMaxRequestsPerHost());
+
+        ConnectionPool connectionPool = new ConnectionPool(config.getMaxIdleConnections(),
+                config.getKeepAliveDuration(), TimeUnit.MILLISECONDS);
+
+        TimeoutConfig timeoutConfig = config.getTimeoutConfig();
+        return new OkHttpClient.Builder()
+                .connectTimeout(timeoutConfig.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutConfig.getReadTimeout(), TimeUnit.MILLISECONDS)
+                .writeTimeout(timeoutConfig.getWriteTimeout(), TimeUnit.MILLISECONDS)
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .protocols(protocols(config.getHttpProtocol()))
+                .build();
+    }
+
+    static List<Protocol> protocols(HttpProtocol httpProtocol) {
+        switch (httpProtocol) {
+            case HTTP_1_1:
+                return Collections.singletonList(Protocol.HTTP_1_1);
+            case H2C:
+                return Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+            case HTTP_2:
+            default:
+                return Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+        }
+    }
+
+    static String providerKey(String baseUrl) {
+        String key = baseUrl.trim();
+        while (key.endsWith("/"))
+            key = key.substring(0, key.length() - 1);
+        return key;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+
+/**
+ * The transport running the calls of the node API services.
+ *
+ * The API services are built on Retrofit, which only needs a {@link Call.Factory}
+ * to run its calls. A transport gets the OkHttp client configured for an API
+ * group, with its timeouts and the SDK interceptors, and returns the factory
+ * creating the calls. {@link OkHttpTransport} is the default.
+ */
+public interface HttpTransport {
+    /**
+     * Create the call factory of an API group.
+     *
+     * @param client the client configured for the API group
+     * @return the call factory
+     */
+    Call.Factory createCallFactory(OkHttpClient client);
+}
@@ -28,6 +28,8 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
@@ -38,12 +40,35 @@ import okhttp3.ResponseBody;
 import okio.Buffer;
 import okio.BufferedSource;
 
-public class NetworkLogInterceptor implements Interceptor {
+public class NetworkLogInterceptor implements AsyncInterceptor {
     @Override
-    public Response intercept(Chain chain) throws IOException {
+    public Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        logRequest(request);
+        return logResponse(chain.proceed(request));
+    }
 
+    @Override
+    public CompletableFuture<Response> interceptAsync(AsyncInterceptor.Chain chain) {
         Request request = chain.request();
+        try {
+            logRequest(request);
+        } catch (IOException e) {
+            return AsyncInterceptor.failed(e);
+        }
+
+        // Logging the response buffers its body, which blocks on the executor.
+        return chain.proceedAsync(request).thenApplyAsync(response -> {
+            try {
+                return logResponse(response);
+            } catch (IOException e) {
+                response.close();
+                throw new CompletionException(e);
+            }
+        }, chain.executor());
+    }
 
+    private void logRequest(Request request) throws IOException {
         LogUtil.d("request url->" + request.url().toString());
         LogUtil.d("request headers->" + request.headers().toString());
 
@@ -51,7 +76,8 @@ public class NetworkLogInterceptor implements Interceptor {
 
         String rbString = null;
 
-        if (requestBody != null) {
+        // Streamed bodies such as uploads can only be written once, they are not logged.
+        if (requestBody != null && requestBody.contentLength() >= 0) {
             Buffer buffer = new Buffer();
             requestBody.writeTo(buffer);
 
@@ -68,9 +94,9 @@ public class NetworkLogInterceptor implements Interceptor {
         if (rbString!=null && !rbString.equals("")) {
             LogUtil.d("request body->" + rbString);
         }
+    }
 
-        Response response = chain.proceed(request);
-
+    private Response logResponse(Response response) throws IOException {
         LogUtil.d("response headers ->" + response.headers().toString());
 
         ResponseBody responseBody = response.body();
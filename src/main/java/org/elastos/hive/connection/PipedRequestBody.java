@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Pipe;
+import okio.Source;
+
+/**
+ * Request body streaming what the caller writes to {@link #outputStream()}.
+ *
+ * The bytes go through a bounded pipe, so the OkHttp call sends them while
+ * they are written and the whole upload is never held in memory. The body
+ * can only be written once: the upload calls are marked as non replayable.
+ */
+public class PipedRequestBody extends RequestBody {
+	private static final long DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+	private final Pipe pipe;
+	private final OutputStream outputStream;
+	private final AtomicBoolean written = new AtomicBoolean(false);
+
+	/**
+	 * @param idleTimeout the maximum time in milliseconds to wait for the caller to
+	 *                    write more bytes, 0 for no timeout
+	 */
+	public PipedRequestBody(long idleTimeout) {
+		this.pipe = new Pipe(DEFAULT_BUFFER_SIZE);
+		this.pipe.source().timeout().timeout(idleTimeout, TimeUnit.MILLISECONDS);
+		this.outputStream = Okio.buffer(pipe.sink()).outputStream();
+	}
+
+	/**
+	 * The stream the upload content is written to. Closing it ends the request body.
+	 */
+	public OutputStream outputStream() {
+		return outputStream;
+	}
+
+	@Override
+	public MediaType contentType() {
+		return OCTET_STREAM;
+	}
+
+	@Override
+	public void writeTo(BufferedSink sink) throws IOException {
+		if (!written.compareAndSet(false, true))
+			throw new IOException("The upload content can only be sent once");
+
+		try (Source source = pipe.source()) {
+			sink.writeAll(source);
+		}
+	}
+
+	/**
+	 * Stop accepting content, typically because the call failed. Pending and
+	 * later writes to the output stream fail with an IOException.
+	 */
+	public void abort() {
+		try {
+			pipe.source().close();
+		} catch (IOException e) {
+			// Ignore, closing the pipe source only releases the writer.
+		}
+	}
+}
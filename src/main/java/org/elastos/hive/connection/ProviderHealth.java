@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+/**
+ * Round trip time and error rate of one provider, as moving averages.
+ *
+ * The error rate follows the calls and the probes sent to the provider. The
+ * round trip time only follows the probes: the calls differ too much, from
+ * a small read to an upload or a replay after 401, and the endpoint in use
+ * would not be measured like the other ones.
+ */
+final class ProviderHealth {
+    private static final double RTT_WEIGHT = 0.2;
+    private static final double ERROR_WEIGHT = 0.1;
+
+    private volatile double rtt = -1;
+    private volatile double errorRate;
+    private volatile long lastProbe;
+
+    synchronized void recordCall(boolean success) {
+        errorRate = errorRate + ERROR_WEIGHT * ((success ? 0 : 1) - errorRate);
+    }
+
+    synchronized void recordProbe(long rttNanos, boolean success) {
+        double millis = rttNanos / 1e6;
+        if (success)
+            rtt = rtt < 0 ? millis : rtt + RTT_WEIGHT * (millis - rtt);
+        recordCall(success);
+    }
+
+    /**
+     * @return the average round trip time of the probes in milliseconds, -1 if unknown
+     */
+    double getRtt() {
+        return rtt;
+    }
+
+    double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Claim the next probe of the provider.
+     *
+     * @param interval the minimum interval between two probes, in milliseconds
+     * @return true if the caller should probe the provider now
+     */
+    synchronized boolean claimProbe(long interval) {
+        long now = System.currentTimeMillis();
+        if (now - lastProbe < interval)
+            return false;
+        lastProbe = now;
+        return true;
+    }
+}
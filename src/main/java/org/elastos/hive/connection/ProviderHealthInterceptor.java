@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Feeds the error rate of the provider with the outcome of each call.
+ * Transport errors and 5xx answers count as errors, canceled calls are
+ * ignored. It runs inside {@link AuthRetryInterceptor}, so a replay after
+ * 401 counts as a call of its own.
+ */
+class ProviderHealthInterceptor implements AsyncInterceptor {
+    private static final int SERVER_ERROR = 500;
+
+    private final ProviderHealth health;
+
+    ProviderHealthInterceptor(ProviderHealth health) {
+        this.health = health;
+    }
+
+    @Override
+    public Response intercept(Interceptor.Chain chain) throws IOException {
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            if (!chain.call().isCanceled())
+                health.recordCall(false);
+            throw e;
+        }
+
+        health.recordCall(response.code() < SERVER_ERROR);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<Response> interceptAsync(AsyncInterceptor.Chain chain) {
+        return chain.proceedAsync(chain.request()).whenComplete((response, error) -> {
+            if (error == null)
+                health.recordCall(response.code() < SERVER_ERROR);
+            else if (!chain.call().isCanceled())
+                health.recordCall(false);
+        });
+    }
+}
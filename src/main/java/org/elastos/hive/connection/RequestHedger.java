@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.HedgingPolicy;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency tracker and hedge budget of one provider, shared by all its vaults.
+ *
+ * The latencies of the last reads are kept in a ring, and the hedge delay is
+ * the configured percentile of them, computed again every few samples.
+ */
+public final class RequestHedger {
+    private static final int WINDOW = 1000;
+    private static final int REFRESH_INTERVAL = 50;
+    private static final int DEPOSIT_WINDOW = 100;
+
+    private final HedgingPolicy policy;
+    private final long[] latencies = new long[WINDOW];
+    private final double budgetCapacity;
+
+    private int samples;
+    private int next;
+    private int sinceRefresh;
+    private long hedgeDelay = -1;
+    private double budget;
+
+    RequestHedger(HedgingPolicy policy) {
+        this.policy = policy;
+        this.budgetCapacity = policy.getMinBudget() + policy.getBudgetRatio() * DEPOSIT_WINDOW;
+        this.budget = policy.getMinBudget();
+    }
+
+    /**
+     * Register a new read and get the delay after which it should be hedged.
+     *
+     * @return the delay in milliseconds, or -1 if not enough latencies are known yet
+     */
+    public synchronized long onRead() {
+        budget = Math.min(budgetCapacity, budget + policy.getBudgetRatio());
+        return hedgeDelay;
+    }
+
+    /**
+     * Take a hedge from the budget.
+     *
+     * @return true if the read can be hedged
+     */
+    public synchronized boolean tryHedge() {
+        if (budget < 1)
+            return false;
+        budget -= 1;
+        return true;
+    }
+
+    /**
+     * Record the latency of an answered read.
+     *
+     * @param latency the latency in nanoseconds
+     */
+    public synchronized void record(long latency) {
+        latencies[next] = latency;
+        next = (next + 1) % WINDOW;
+        if (samples < WINDOW)
+            samples++;
+
+        if (samples >= policy.getMinSamples() && (hedgeDelay < 0 || ++sinceRefresh >= REFRESH_INTERVAL)) {
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            int index = Math.min(samples - 1, (int) Math.ceil(policy.getPercentile() * samples) - 1);
+            hedgeDelay = Math.max(policy.getMinDelay(), TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(index, 0)]));
+            sinceRefresh = 0;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.elastos.hive.connection.model.RetryPolicy;
+import org.elastos.hive.network.Idempotent;
+import org.elastos.hive.utils.JsonUtil;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import retrofit2.Invocation;
+
+/**
+ * Decides whether and when the idempotent calls are sent again after a
+ * connection error or a 502, 503 or 504 answer, following the
+ * {@link RetryPolicy} of the provider and within its {@link RetryBudget}.
+ *
+ * The calls are idempotent when their API method is annotated with
+ * {@link Idempotent}. The inserts are only retried when every document has
+ * a client generated "_id", and only after an attempt which cannot have been
+ * applied: a failed connection or a 503 answer. An insert whose response has
+ * been lost, after a timeout or a reset, may have gone through, and its retry
+ * would fail with a duplicate key although the documents have been inserted.
+ */
+public final class Retrier {
+    private final RetryPolicy policy;
+    private final RetryBudget budget;
+
+    Retrier(RetryPolicy policy, RetryBudget budget) {
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    /**
+     * Register a new call, which feeds the retry budget. The hedged copy of a
+     * call is not a new call, see {@link #isRetryable(Request)}.
+     *
+     * @param request the request of the call
+     * @return true if the call may be retried
+     */
+    public boolean onCall(Request request) {
+        budget.deposit();
+        return isRetryable(request);
+    }
+
+    /**
+     * Check whether a call may be retried, without feeding the retry budget.
+     *
+     * @param request the request of the call
+     * @return true if the call may be retried
+     */
+    public boolean isRetryable(Request request) {
+        return policy.getMaxAttempts() > 1 && isIdempotent(request);
+    }
+
+    /**
+     * Get the delay before retrying a call which failed with a connection error.
+     *
+     * @param request the request of the call
+     * @param attempt the number of the failed attempt, from 1
+     * @param error the error of the attempt
+     * @return the delay in milliseconds, or -1 if the call is not retried
+     */
+    public long onFailure(Request request, int attempt, IOException error) {
+        // Shed by the SDK, the provider has not been reached.
+        if (error instanceof RequestRejectedException || error instanceof CircuitOpenException)
+            return -1;
+        if (isInsert(request) && !isNotConnected(error))
+            return -1;
+        if (attempt >= policy.getMaxAttempts() || !budget.tryWithdraw())
+            return -1;
+        return policy.backoff(attempt, ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * Get the delay before retrying a call answered with a transient error,
+     * which honours the Retry-After header.
+     *
+     * @param request the request of the call
+     * @param attempt the number of the answered attempt, from 1
+     * @param response the response of the attempt
+     * @return the delay in milliseconds, or -1 if the call is not retried
+     */
+    public long onResponse(Request request, int attempt, Response response) {
+        int code = response.code();
+        boolean transientError = isInsert(request) ? code == 503 : isTransient(code);
+        if (attempt >= policy.getMaxAttempts() || !transientError || !budget.tryWithdraw())
+            return -1;
+        return Math.max(policy.backoff(attempt, ThreadLocalRandom.current().nextDouble()), retryAfter(response));
+    }
+
+    private static boolean isTransient(int code) {
+        return code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * The connection has not been established, the request has not been sent.
+     */
+    private static boolean isNotConnected(IOException error) {
+        return error instanceof ConnectException
+                || error instanceof NoRouteToHostException
+                || error instanceof UnknownHostException;
+    }
+
+    private static boolean isInsert(Request request) {
+        Idempotent idempotent = idempotent(request);
+        return idempotent != null && idempotent.requiresDocumentId();
+    }
+
+    private long retryAfter(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null)
+            return 0;
+        try {
+            return Math.min(TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim())), policy.getMaxBackoff());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Idempotent idempotent(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        return invocation != null ? invocation.method().getAnnotation(Idempotent.class) : null;
+    }
+
+    static boolean isIdempotent(Request request) {
+        Idempotent idempotent = idempotent(request);
+        if (idempotent == null)
+            return false;
+        return !idempotent.requiresDocumentId() || hasDocumentIds(request.body());
+    }
+
+    private static boolean hasDocumentIds(RequestBody body) {
+        if (body == null)
+            return false;
+        try {
+            if (body.contentLength() < 0)
+                return false;
+
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            JsonNode root = JsonUtil.deserialize(buffer.readUtf8());
+            JsonNode document = root != null ? root.get("document") : null;
+            if (document == null)
+                return false;
+            if (!document.isArray())
+                return document.hasNonNull("_id");
+
+            for (JsonNode item : document) {
+                if (!item.hasNonNull("_id"))
+                    return false;
+            }
+            return document.size() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.RetryPolicy;
+
+/**
+ * Retry budget of one provider, shared by all its vaults.
+ *
+ * Every call deposits the budget ratio and every retry withdraws one. The
+ * budget holds at most the initial budget plus the deposits of 100 calls,
+ * so a long quiet period does not allow a retry storm afterwards.
+ */
+final class RetryBudget {
+    private static final int DEPOSIT_WINDOW = 100;
+
+    private final double ratio;
+    private final double capacity;
+    private double balance;
+
+    RetryBudget(RetryPolicy policy) {
+        this.ratio = policy.getBudgetRatio();
+        this.capacity = policy.getMinBudget() + ratio * DEPOSIT_WINDOW;
+        this.balance = policy.getMinBudget();
+    }
+
+    synchronized void deposit() {
+        balance = Math.min(capacity, balance + ratio);
+    }
+
+    synchronized boolean tryWithdraw() {
+        if (balance < 1)
+            return false;
+        balance -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends the executed idempotent calls again after a connection error or a
+ * transient error answer, as decided by the {@link Retrier} of the provider.
+ *
+ * The executed calls already hold their thread for the whole exchange, and
+ * the backoff between the attempts sleeps on it as well. The enqueued calls
+ * do not go through this interceptor: the SDK sends them again from a timer,
+ * so a backoff never blocks an OkHttp dispatcher thread. This interceptor
+ * runs before the circuit breaker, so each attempt is admitted by the breaker
+ * and the concurrency limit.
+ */
+class RetryInterceptor implements Interceptor {
+    private static final long CANCEL_CHECK_INTERVAL = 100;
+
+    private final Retrier retrier;
+
+    RetryInterceptor(Retrier retrier) {
+        this.retrier = retrier;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!retrier.onCall(request))
+            return chain.proceed(request);
+
+        for (int attempt = 1; ; attempt++) {
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                long delay = chain.call().isCanceled() ? -1 : retrier.onFailure(request, attempt, e);
+                if (delay < 0)
+                    throw e;
+                pause(chain, delay);
+                continue;
+            }
+
+            long delay = retrier.onResponse(request, attempt, response);
+            if (delay < 0)
+                return response;
+
+            response.close();
+            pause(chain, delay);
+        }
+    }
+
+    private static void pause(Chain chain, long delay) throws IOException {
+        long deadline = System.currentTimeMillis() + delay;
+        try {
+            for (long remaining = delay; remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+                if (chain.call().isCanceled())
+                    throw new IOException("Canceled");
+                Thread.sleep(Math.min(remaining, CANCEL_CHECK_INTERVAL));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
@@ -22,22 +22,259 @@
 
 package org.elastos.hive.connection.model;
 
+import org.elastos.hive.connection.HttpTransport;
+import org.elastos.hive.connection.OkHttpTransport;
+
+import java.util.EnumMap;
+import java.util.Map;
+
 public class BaseServiceConfig {
+	public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+	public static final long DEFAULT_KEEP_ALIVE_DURATION = 5 * 60 * 1000;
+	public static final int DEFAULT_MAX_REQUESTS = 128;
+	public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 64;
+	public static final double DEFAULT_TOKEN_RENEWAL_RATIO = 0.8;
+	public static final double DEFAULT_TOKEN_RENEWAL_JITTER = 0.1;
+	public static final int DEFAULT_MAX_CONCURRENT_AUTHORIZATIONS = 16;
+	public static final long DEFAULT_UPLOAD_READ_TIMEOUT = 2 * 60 * 1000;
+	public static final HttpProtocol DEFAULT_HTTP_PROTOCOL = HttpProtocol.HTTP_2;
+
 	private final HeaderConfig headerConfig;
+	private final int maxIdleConnections;
+	private final long keepAliveDuration;
+	private final int maxRequests;
+	private final int maxRequestsPerHost;
+	private final double tokenRenewalRatio;
+	private final double tokenRenewalJitter;
+	private final int maxConcurrentAuthorizations;
+	private final TimeoutConfig timeoutConfig;
+	private final Map<ApiGroup, TimeoutConfig> groupTimeoutConfigs;
+	private final HttpProtocol httpProtocol;
+	private final HttpTransport transport;
+	private final ConcurrencyLimitConfig concurrencyLimitConfig;
+	private final CircuitBreakerConfig circuitBreakerConfig;
+	private final RetryPolicy retryPolicy;
+	private final HedgingPolicy hedgingPolicy;
+	private final DidCacheConfig didCacheConfig;
+	private final VaultPoolConfig vaultPoolConfig;
 
 	private BaseServiceConfig(Builder builder) {
 		this.headerConfig = builder.headerConfig;
+		this.maxIdleConnections = builder.maxIdleConnections;
+		this.keepAliveDuration = builder.keepAliveDuration;
+		this.maxRequests = builder.maxRequests;
+		this.maxRequestsPerHost = builder.maxRequestsPerHost;
+		this.tokenRenewalRatio = builder.tokenRenewalRatio;
+		this.tokenRenewalJitter = builder.tokenRenewalJitter;
+		this.maxConcurrentAuthorizations = builder.maxConcurrentAuthorizations;
+		this.timeoutConfig = builder.timeoutConfig;
+		this.groupTimeoutConfigs = new EnumMap<>(builder.groupTimeoutConfigs);
+		this.httpProtocol = builder.httpProtocol;
+		this.transport = builder.transport;
+		this.concurrencyLimitConfig = builder.concurrencyLimitConfig;
+		this.circuitBreakerConfig = builder.circuitBreakerConfig;
+		this.retryPolicy = builder.retryPolicy;
+		this.hedgingPolicy = builder.hedgingPolicy;
+		this.didCacheConfig = builder.didCacheConfig;
+		this.vaultPoolConfig = builder.vaultPoolConfig;
 	}
 
 	public HeaderConfig getHeaderConfig() {
 		return headerConfig;
 	}
 
+	/**
+	 * Maximum number of idle connections kept in the shared pool of one provider.
+	 */
+	public int getMaxIdleConnections() {
+		return maxIdleConnections;
+	}
+
+	/**
+	 * How long an idle connection stays in the pool, in milliseconds.
+	 */
+	public long getKeepAliveDuration() {
+		return keepAliveDuration;
+	}
+
+	/**
+	 * Maximum number of requests executing concurrently on the shared dispatcher.
+	 */
+	public int getMaxRequests() {
+		return maxRequests;
+	}
+
+	/**
+	 * Maximum number of requests executing concurrently against one host.
+	 */
+	public int getMaxRequestsPerHost() {
+		return maxRequestsPerHost;
+	}
+
+	/**
+	 * The fraction of the token lifetime after which the token is renewed
+	 * in background, 0 disables the background renewal.
+	 */
+	public double getTokenRenewalRatio() {
+		return tokenRenewalRatio;
+	}
+
+	/**
+	 * The random spread applied to the renewal time, as a fraction of the token
+	 * lifetime, so the vaults do not renew all at once.
+	 */
+	public double getTokenRenewalJitter() {
+		return tokenRenewalJitter;
+	}
+
+	/**
+	 * Maximum number of calls to {@link org.elastos.hive.HiveContext#getAuthorization(String)}
+	 * running at once for the vaults of a client. The sign in of a vault is
+	 * still serialized.
+	 */
+	public int getMaxConcurrentAuthorizations() {
+		return maxConcurrentAuthorizations;
+	}
+
+	public TimeoutConfig getTimeoutConfig() {
+		return timeoutConfig;
+	}
+
+	/**
+	 * Get the timeouts of an API group, the default timeouts are returned
+	 * if none has been set for the group.
+	 */
+	public TimeoutConfig getTimeoutConfig(ApiGroup group) {
+		TimeoutConfig config = groupTimeoutConfigs.get(group);
+		return config != null ? config : timeoutConfig;
+	}
+
+	/**
+	 * The HTTP protocol of the connections to the node.
+	 */
+	public HttpProtocol getHttpProtocol() {
+		return httpProtocol;
+	}
+
+	/**
+	 * The transport running the calls to the node.
+	 */
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * The adaptive limit on the concurrent calls to the provider.
+	 */
+	public ConcurrencyLimitConfig getConcurrencyLimitConfig() {
+		return concurrencyLimitConfig;
+	}
+
+	/**
+	 * The circuit breaker failing the calls at once while the provider is down.
+	 */
+	public CircuitBreakerConfig getCircuitBreakerConfig() {
+		return circuitBreakerConfig;
+	}
+
+	/**
+	 * The retry of the idempotent calls after a transient failure.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * The hedging of the idempotent reads, disabled by default.
+	 */
+	public HedgingPolicy getHedgingPolicy() {
+		return hedgingPolicy;
+	}
+
+	/**
+	 * The cache of the owner DID documents used to find the vault providers.
+	 *
+	 * The cache is shared by all the clients: the maximum size of the first
+	 * client config wins, the other settings apply to the lookups of each client.
+	 */
+	public DidCacheConfig getDidCacheConfig() {
+		return didCacheConfig;
+	}
+
+	/**
+	 * The pool of the vaults opened by the client.
+	 */
+	public VaultPoolConfig getVaultPoolConfig() {
+		return vaultPoolConfig;
+	}
+
+	public Builder newBuilder() {
+		return new Builder(this);
+	}
+
 	public static final class Builder {
 		HeaderConfig headerConfig;
+		int maxIdleConnections;
+		long keepAliveDuration;
+		int maxRequests;
+		int maxRequestsPerHost;
+		double tokenRenewalRatio;
+		double tokenRenewalJitter;
+		int maxConcurrentAuthorizations;
+		TimeoutConfig timeoutConfig;
+		Map<ApiGroup, TimeoutConfig> groupTimeoutConfigs;
+		HttpProtocol httpProtocol;
+		HttpTransport transport;
+		ConcurrencyLimitConfig concurrencyLimitConfig;
+		CircuitBreakerConfig circuitBreakerConfig;
+		RetryPolicy retryPolicy;
+		HedgingPolicy hedgingPolicy;
+		DidCacheConfig didCacheConfig;
+		VaultPoolConfig vaultPoolConfig;
 
 		public Builder() {
 			this.headerConfig = null;
+			this.maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+			this.keepAliveDuration = DEFAULT_KEEP_ALIVE_DURATION;
+			this.maxRequests = DEFAULT_MAX_REQUESTS;
+			this.maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+			this.tokenRenewalRatio = DEFAULT_TOKEN_RENEWAL_RATIO;
+			this.tokenRenewalJitter = DEFAULT_TOKEN_RENEWAL_JITTER;
+			this.maxConcurrentAuthorizations = DEFAULT_MAX_CONCURRENT_AUTHORIZATIONS;
+			this.timeoutConfig = new TimeoutConfig.Builder().build();
+			this.groupTimeoutConfigs = new EnumMap<>(ApiGroup.class);
+			this.groupTimeoutConfigs.put(ApiGroup.UPLOAD, new TimeoutConfig.Builder()
+					.readTimeout(DEFAULT_UPLOAD_READ_TIMEOUT)
+					.build());
+			this.httpProtocol = DEFAULT_HTTP_PROTOCOL;
+			this.transport = new OkHttpTransport();
+			this.concurrencyLimitConfig = new ConcurrencyLimitConfig.Builder().build();
+			this.circuitBreakerConfig = new CircuitBreakerConfig.Builder().build();
+			this.retryPolicy = new RetryPolicy.Builder().build();
+			this.hedgingPolicy = new HedgingPolicy.Builder().build();
+			this.didCacheConfig = new DidCacheConfig.Builder().build();
+			this.vaultPoolConfig = new VaultPoolConfig.Builder().build();
+		}
+
+		Builder(BaseServiceConfig config) {
+			this.headerConfig = config.headerConfig;
+			this.maxIdleConnections = config.maxIdleConnections;
+			this.keepAliveDuration = config.keepAliveDuration;
+			this.maxRequests = config.maxRequests;
+			this.maxRequestsPerHost = config.maxRequestsPerHost;
+			this.tokenRenewalRatio = config.tokenRenewalRatio;
+			this.tokenRenewalJitter = config.tokenRenewalJitter;
+			this.maxConcurrentAuthorizations = config.maxConcurrentAuthorizations;
+			this.timeoutConfig = config.timeoutConfig;
+			this.groupTimeoutConfigs = new EnumMap<>(config.groupTimeoutConfigs);
+			this.httpProtocol = config.httpProtocol;
+			this.transport = config.transport;
+			this.concurrencyLimitConfig = config.concurrencyLimitConfig;
+			this.circuitBreakerConfig = config.circuitBreakerConfig;
+			this.retryPolicy = config.retryPolicy;
+			this.hedgingPolicy = config.hedgingPolicy;
+			this.didCacheConfig = config.didCacheConfig;
+			this.vaultPoolConfig = config.vaultPoolConfig;
 		}
 
 		public Builder headerConfig(HeaderConfig headerConfig) {
@@ -45,6 +282,128 @@ public class BaseServiceConfig {
 			return this;
 		}
 
+		public Builder maxIdleConnections(int maxIdleConnections) {
+			if (maxIdleConnections < 0)
+				throw new IllegalArgumentException("maxIdleConnections < 0");
+			this.maxIdleConnections = maxIdleConnections;
+			return this;
+		}
+
+		public Builder keepAliveDuration(long keepAliveDuration) {
+			if (keepAliveDuration <= 0)
+				throw new IllegalArgumentException("keepAliveDuration <= 0");
+			this.keepAliveDuration = keepAliveDuration;
+			return this;
+		}
+
+		public Builder maxRequests(int maxRequests) {
+			if (maxRequests < 1)
+				throw new IllegalArgumentException("maxRequests < 1");
+			this.maxRequests = maxRequests;
+			return this;
+		}
+
+		public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+			if (maxRequestsPerHost < 1)
+				throw new IllegalArgumentException("maxRequestsPerHost < 1");
+			this.maxRequestsPerHost = maxRequestsPerHost;
+			return this;
+		}
+
+		public Builder tokenRenewalRatio(double tokenRenewalRatio) {
+			if (tokenRenewalRatio < 0 || tokenRenewalRatio >= 1)
+				throw new IllegalArgumentException("tokenRenewalRatio must be in [0, 1)");
+			this.tokenRenewalRatio = tokenRenewalRatio;
+			return this;
+		}
+
+		public Builder tokenRenewalJitter(double tokenRenewalJitter) {
+			if (tokenRenewalJitter < 0 || tokenRenewalJitter >= 1)
+				throw new IllegalArgumentException("tokenRenewalJitter must be in [0, 1)");
+			this.tokenRenewalJitter = tokenRenewalJitter;
+			return this;
+		}
+
+		public Builder maxConcurrentAuthorizations(int maxConcurrentAuthorizations) {
+			if (maxConcurrentAuthorizations < 1)
+				throw new IllegalArgumentException("maxConcurrentAuthorizations < 1");
+			this.maxConcurrentAuthorizations = maxConcurrentAuthorizations;
+			return this;
+		}
+
+		/**
+		 * Set the default timeouts, used by the API groups without their own timeouts.
+		 */
+		public Builder timeoutConfig(TimeoutConfig timeoutConfig) {
+			if (timeoutConfig == null)
+				throw new IllegalArgumentException("timeoutConfig is null");
+			this.timeoutConfig = timeoutConfig;
+			return this;
+		}
+
+		public Builder timeoutConfig(ApiGroup group, TimeoutConfig timeoutConfig) {
+			if (group == null || timeoutConfig == null)
+				throw new IllegalArgumentException("group or timeoutConfig is null");
+			this.groupTimeoutConfigs.put(group, timeoutConfig);
+			return this;
+		}
+
+		public Builder httpProtocol(HttpProtocol httpProtocol) {
+			if (httpProtocol == null)
+				throw new IllegalArgumentException("httpProtocol is null");
+			this.httpProtocol = httpProtocol;
+			return this;
+		}
+
+		public Builder transport(HttpTransport transport) {
+			if (transport == null)
+				throw new IllegalArgumentException("transport is null");
+			this.transport = transport;
+			return this;
+		}
+
+		public Builder concurrencyLimitConfig(ConcurrencyLimitConfig concurrencyLimitConfig) {
+			if (concurrencyLimitConfig == null)
+				throw new IllegalArgumentException("concurrencyLimitConfig is null");
+			this.concurrencyLimitConfig = concurrencyLimitConfig;
+			return this;
+		}
+
+		public Builder circuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+			if (circuitBreakerConfig == null)
+				throw new IllegalArgumentException("circuitBreakerConfig is null");
+			this.circuitBreakerConfig = circuitBreakerConfig;
+			return this;
+		}
+
+		public Builder retryPolicy(RetryPolicy retryPolicy) {
+			if (retryPolicy == null)
+				throw new IllegalArgumentException("retryPolicy is null");
+			this.retryPolicy = retryPolicy;
+			return this;
+		}
+
+		public Builder hedgingPolicy(HedgingPolicy hedgingPolicy) {
+			if (hedgingPolicy == null)
+				throw new IllegalArgumentException("hedgingPolicy is null");
+			this.hedgingPolicy = hedgingPolicy;
+			return this;
+		}
+
+		public Builder didCacheConfig(DidCacheConfig didCacheConfig) {
+			if (didCacheConfig == null)
+				throw new IllegalArgumentException("didCacheConfig is null");
+			this.didCacheConfig = didCacheConfig;
+			return this;
+		}
+
+		public Builder vaultPoolConfig(VaultPoolConfig vaultPoolConfig) {
+			if (vaultPoolConfig == null)
+				throw new IllegalArgumentException("vaultPoolConfig is null");
+			this.vaultPoolConfig = vaultPoolConfig;
+			return this;
+		}
+
 		public BaseServiceConfig build() {
 			return new BaseServiceConfig(this);
 		}
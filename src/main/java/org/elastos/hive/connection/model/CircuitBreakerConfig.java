@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection.model;
+
+/**
+ * Settings of the circuit breaker of one provider.
+ *
+ * The breaker opens when the failure rate of the last calls reaches the
+ * threshold, and then fails the calls at once for the open duration. It
+ * then lets a few probe calls through, and closes again if they all succeed.
+ * Transport errors and 5xx answers count as failures.
+ */
+public class CircuitBreakerConfig {
+	public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+	public static final int DEFAULT_WINDOW_SIZE = 50;
+	public static final int DEFAULT_MINIMUM_CALLS = 10;
+	public static final long DEFAULT_OPEN_DURATION = 30 * 1000;
+	public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+	private final boolean enabled;
+	private final double failureRateThreshold;
+	private final int windowSize;
+	private final int minimumCalls;
+	private final long openDuration;
+	private final int halfOpenCalls;
+
+	private CircuitBreakerConfig(Builder builder) {
+		this.enabled = builder.enabled;
+		this.failureRateThreshold = builder.failureRateThreshold;
+		this.windowSize = builder.windowSize;
+		this.minimumCalls = builder.minimumCalls;
+		this.openDuration = builder.openDuration;
+		this.halfOpenCalls = builder.halfOpenCalls;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * The failure rate, in (0, 1], from which the breaker opens.
+	 */
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	/**
+	 * The number of last calls the failure rate is computed on.
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * The number of calls needed before the failure rate is considered.
+	 */
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	/**
+	 * How long the breaker stays open before letting probe calls through, in milliseconds.
+	 */
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	/**
+	 * The number of probe calls which must succeed to close the breaker.
+	 */
+	public int getHalfOpenCalls() {
+		return halfOpenCalls;
+	}
+
+	public static final class Builder {
+		boolean enabled;
+		double failureRateThreshold;
+		int windowSize;
+		int minimumCalls;
+		long openDuration;
+		int halfOpenCalls;
+
+		public Builder() {
+			this.enabled = true;
+			this.failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+			this.windowSize = DEFAULT_WINDOW_SIZE;
+			this.minimumCalls = DEFAULT_MINIMUM_CALLS;
+			this.openDuration = DEFAULT_OPEN_DURATION;
+			this.halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+		}
+
+		public Builder enabled(boolean enabled) {
+			this.enabled = enabled;
+			return this;
+		}
+
+		public Builder failureRateThreshold(double failureRateThreshold) {
+			if (failureRateThreshold <= 0 || failureRateThreshold > 1)
+				throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+			this.failureRateThreshold = failureRateThreshold;
+			return this;
+		}
+
+		public Builder windowSize(int windowSize) {
+			if (windowSize < 1)
+				throw new IllegalArgumentException("windowSize < 1");
+			this.windowSize = windowSize;
+			return this;
+		}
+
+		public Builder minimumCalls(int minimumCalls) {
+			if (minimumCalls < 1)
+				throw new IllegalArgumentException("minimumCalls < 1");
+			this.minimumCalls = minimumCalls;
+			return this;
+		}
+
+		public Builder openDuration(long openDuration) {
+			if (openDuration <= 0)
+				throw new IllegalArgumentException("openDuration <= 0");
+			this.openDuration = openDuration;
+			return this;
+		}
+
+		public Builder halfOpenCalls(int halfOpenCalls) {
+			if (halfOpenCalls < 1)
+				throw new IllegalArgumentException("halfOpenCalls < 1");
+			this.halfOpenCalls = halfOpenCalls;
+			return this;
+		}
+
+		public CircuitBreakerConfig build() {
+			if (minimumCalls > windowSize)
+				throw new IllegalArgumentException("minimumCalls > windowSize");
+			return new CircuitBreakerConfig(this);
+		}
+	}
+}
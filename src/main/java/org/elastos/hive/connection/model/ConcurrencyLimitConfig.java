@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection.model;
+
+/**
+ * Settings of the adaptive limit on the concurrent calls to one provider.
+ *
+ * The limit grows by one after each call answered in time while it is
+ * well used, and shrinks by the backoff ratio when a call times out, the
+ * node answers 429 or 503, or the round trip time goes above the tolerance
+ * times the lowest recent one. The calls over the limit wait in a queue
+ * served fairly across the vaults sharing the provider, or are rejected
+ * at once when the queue size is 0.
+ */
+public class ConcurrencyLimitConfig {
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 64;
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+	public static final long DEFAULT_QUEUE_TIMEOUT = 30 * 1000;
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	public static final double DEFAULT_RTT_TOLERANCE = 2.0;
+
+	private final boolean enabled;
+	private final int initialLimit;
+	private final int minLimit;
+	private final int maxLimit;
+	private final int queueSize;
+	private final long queueTimeout;
+	private final double backoffRatio;
+	private final double rttTolerance;
+
+	private ConcurrencyLimitConfig(Builder builder) {
+		this.enabled = builder.enabled;
+		this.initialLimit = builder.initialLimit;
+		this.minLimit = builder.minLimit;
+		this.maxLimit = builder.maxLimit;
+		this.queueSize = builder.queueSize;
+		this.queueTimeout = builder.queueTimeout;
+		this.backoffRatio = builder.backoffRatio;
+		this.rttTolerance = builder.rttTolerance;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getInitialLimit() {
+		return initialLimit;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Maximum number of calls waiting for the limit, 0 rejects the calls over the limit at once.
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * How long a call waits in the queue before being rejected, in milliseconds.
+	 */
+	public long getQueueTimeout() {
+		return queueTimeout;
+	}
+
+	public double getBackoffRatio() {
+		return backoffRatio;
+	}
+
+	public double getRttTolerance() {
+		return rttTolerance;
+	}
+
+	public static final class Builder {
+		boolean enabled;
+		int initialLimit;
+		int minLimit;
+		int maxLimit;
+		int queueSize;
+		long queueTimeout;
+		double backoffRatio;
+		double rttTolerance;
+
+		public Builder() {
+			this.enabled = true;
+			this.initialLimit = DEFAULT_INITIAL_LIMIT;
+			this.minLimit = DEFAULT_MIN_LIMIT;
+			this.maxLimit = DEFAULT_MAX_LIMIT;
+			this.queueSize = DEFAULT_QUEUE_SIZE;
+			this.queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+			this.backoffRatio = DEFAULT_BACKOFF_RATIO;
+			this.rttTolerance = DEFAULT_RTT_TOLERANCE;
+		}
+
+		public Builder enabled(boolean enabled) {
+			this.enabled = enabled;
+			return this;
+		}
+
+		public Builder initialLimit(int initialLimit) {
+			if (initialLimit < 1)
+				throw new IllegalArgumentException("initialLimit < 1");
+			this.initialLimit = initialLimit;
+			return this;
+		}
+
+		public Builder minLimit(int minLimit) {
+			if (minLimit < 1)
+				throw new IllegalArgumentException("minLimit < 1");
+			this.minLimit = minLimit;
+			return this;
+		}
+
+		public Builder maxLimit(int maxLimit) {
+			if (maxLimit < 1)
+				throw new IllegalArgumentException("maxLimit < 1");
+			this.maxLimit = maxLimit;
+			return this;
+		}
+
+		/**
+		 * Set the queue size, 0 enables the fast reject mode.
+		 */
+		public Builder queueSize(int queueSize) {
+			if (queueSize < 0)
+				throw new IllegalArgumentException("queueSize < 0");
+			this.queueSize = queueSize;
+			return this;
+		}
+
+		public Builder queueTimeout(long queueTimeout) {
+			if (queueTimeout <= 0)
+				throw new IllegalArgumentException("queueTimeout <= 0");
+			this.queueTimeout = queueTimeout;
+			return this;
+		}
+
+		public Builder backoffRatio(double backoffRatio) {
+			if (backoffRatio <= 0 || backoffRatio >= 1)
+				throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+			this.backoffRatio = backoffRatio;
+			return this;
+		}
+
+		public Builder rttTolerance(double rttTolerance) {
+			if (rttTolerance < 1)
+				throw new IllegalArgumentException("rttTolerance < 1");
+			this.rttTolerance = rttTolerance;
+			return this;
+		}
+
+		public ConcurrencyLimitConfig build() {
+			if (minLimit > maxLimit)
+				throw new IllegalArgumentException("minLimit > maxLimit");
+			if (initialLimit < minLimit || initialLimit > maxLimit)
+				throw new IllegalArgumentException("initialLimit out of [minLimit, maxLimit]");
+			return new ConcurrencyLimitConfig(this);
+		}
+	}
+}
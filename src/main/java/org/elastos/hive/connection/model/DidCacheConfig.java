@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive.connection.model;
+
+/**
+ * Cache of the owner DID documents and of the vault providers they declare.
+ *
+ * A document is fresh for the time to live after being resolved. Once expired,
+ * it is still served during the stale period while it is resolved again in
+ * background; after that, the lookups wait for the new resolution.
+ */
+public class DidCacheConfig {
+	public static final long DEFAULT_TTL = 5 * 60 * 1000;
+	public static final long DEFAULT_STALE_PERIOD = 30 * 60 * 1000;
+	public static final int DEFAULT_MAX_SIZE = 1024;
+
+	private final boolean enabled;
+	private final long ttl;
+	private final long stalePeriod;
+	private final int maxSize;
+
+	private DidCacheConfig(Builder builder) {
+		this.enabled = builder.enabled;
+		this.ttl = builder.ttl;
+		this.stalePeriod = builder.stalePeriod;
+		this.maxSize = builder.maxSize;
+	}
+
+	/**
+	 * Without the cache, each lookup resolves the DID.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * The time a resolved document is fresh, in milliseconds.
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * The time an expired document is still served while being resolved again, in milliseconds.
+	 */
+	public long getStalePeriod() {
+		return stalePeriod;
+	}
+
+	/**
+	 * The maximum number of DIDs kept, the least recently used are dropped first.
+	 * The cache being shared, only the size of the first client config applies.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public static final class Builder {
+		boolean enabled;
+		long ttl;
+		long stalePeriod;
+		int maxSize;
+
+		public Builder() {
+			this.enabled = true;
+			this.ttl = DEFAULT_TTL;
+			this.stalePeriod = DEFAULT_STALE_PERIOD;
+			this.maxSize = DEFAULT_MAX_SIZE;
+		}
+
+		public Builder enabled(boolean enabled) {
+			this.enabled = enabled;
+			return this;
+		}
+
+		public Builder ttl(long ttl) {
+			if (ttl <= 0)
+				throw new IllegalArgumentException("ttl <= 0");
+			this.ttl = ttl;
+			return this;
+		}
+
+		public Builder stalePeriod(long stalePeriod) {
+			if (stalePeriod < 0)
+				throw new IllegalArgumentException("stalePeriod < 0");
+			this.stalePeriod = stalePeriod;
+			return this;
+		}
+
+		public Builder maxSize(int maxSize) {
+			if (maxSize < 1)
+				throw new IllegalArgumentException("maxSize < 1");
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public DidCacheConfig build() {
+			return new DidCacheConfig(this);
+		}
+	}
+}
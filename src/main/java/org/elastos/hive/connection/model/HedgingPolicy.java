@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection.model;
+
+/**
+ * Hedging of the idempotent reads: when a read has not been answered after
+ * the given percentile of the recent latencies of its provider, a second
+ * copy is sent and the first answer wins, the other call being canceled.
+ *
+ * The hedges of a provider are bounded by a budget: every read adds the
+ * budget ratio to the budget and every hedge takes one from it.
+ */
+public class HedgingPolicy {
+	public static final double DEFAULT_PERCENTILE = 0.95;
+	public static final long DEFAULT_MIN_DELAY = 5;
+	public static final int DEFAULT_MIN_SAMPLES = 20;
+	public static final double DEFAULT_BUDGET_RATIO = 0.05;
+	public static final int DEFAULT_MIN_BUDGET = 5;
+
+	private final boolean enabled;
+	private final double percentile;
+	private final long minDelay;
+	private final int minSamples;
+	private final double budgetRatio;
+	private final int minBudget;
+
+	private HedgingPolicy(Builder builder) {
+		this.enabled = builder.enabled;
+		this.percentile = builder.percentile;
+		this.minDelay = builder.minDelay;
+		this.minSamples = builder.minSamples;
+		this.budgetRatio = builder.budgetRatio;
+		this.minBudget = builder.minBudget;
+	}
+
+	/**
+	 * Hedging is opt-in, disabled by default.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * The percentile of the recent latencies after which a read is hedged.
+	 */
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * The minimum delay before hedging a read, in milliseconds.
+	 */
+	public long getMinDelay() {
+		return minDelay;
+	}
+
+	/**
+	 * The number of latencies to observe before hedging.
+	 */
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	/**
+	 * The number of hedges each read adds to the budget of its provider.
+	 */
+	public double getBudgetRatio() {
+		return budgetRatio;
+	}
+
+	/**
+	 * The initial hedge budget of a provider, before its reads add to it.
+	 */
+	public int getMinBudget() {
+		return minBudget;
+	}
+
+	public static final class Builder {
+		boolean enabled;
+		double percentile;
+		long minDelay;
+		int minSamples;
+		double budgetRatio;
+		int minBudget;
+
+		public Builder() {
+			this.enabled = false;
+			this.percentile = DEFAULT_PERCENTILE;
+			this.minDelay = DEFAULT_MIN_DELAY;
+			this.minSamples = DEFAULT_MIN_SAMPLES;
+			this.budgetRatio = DEFAULT_BUDGET_RATIO;
+			this.minBudget = DEFAULT_MIN_BUDGET;
+		}
+
+		public Builder enabled(boolean enabled) {
+			this.enabled = enabled;
+			return this;
+		}
+
+		public Builder percentile(double percentile) {
+			if (percentile <= 0 || percentile >= 1)
+				throw new IllegalArgumentException("percentile must be in (0, 1)");
+			this.percentile = percentile;
+			return this;
+		}
+
+		public Builder minDelay(long minDelay) {
+			if (minDelay < 0)
+				throw new IllegalArgumentException("minDelay < 0");
+			this.minDelay = minDelay;
+			return this;
+		}
+
+		public Builder minSamples(int minSamples) {
+			if (minSamples < 1)
+				throw new IllegalArgumentException("minSamples < 1");
+			this.minSamples = minSamples;
+			return this;
+		}
+
+		public Builder budgetRatio(double budgetRatio) {
+			if (budgetRatio < 0 || budgetRatio > 1)
+				throw new IllegalArgumentException("budgetRatio must be in [0, 1]");
+			this.budgetRatio = budgetRatio;
+			return this;
+		}
+
+		public Builder minBudget(int minBudget) {
+			if (minBudget < 0)
+				throw new IllegalArgumentException("minBudget < 0");
+			this.minBudget = minBudget;
+			return this;
+		}
+
+		public HedgingPolicy build() {
+			return new HedgingPolicy(this);
+		}
+	}
+}
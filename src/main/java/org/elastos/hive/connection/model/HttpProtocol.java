@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection.model;
+
+/**
+ * The HTTP protocol used to talk to the node.
+ */
+public enum HttpProtocol {
+	/**
+	 * HTTP/1.1 only, one request at a time on each connection.
+	 */
+	HTTP_1_1,
+
+	/**
+	 * HTTP/2 negotiated with ALPN on TLS connections, falling back to HTTP/1.1.
+	 * Plain http:// nodes are reached with HTTP/1.1.
+	 */
+	HTTP_2,
+
+	/**
+	 * Cleartext HTTP/2 with prior knowledge, for http:// nodes known to
+	 * support it. All the calls to a node are multiplexed on a single connection.
+	 */
+	H2C
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection.model;
+
+/**
+ * Retry of the idempotent calls after a transient failure: a connection
+ * error or a 502, 503 or 504 answer.
+ *
+ * The attempts are spaced by an exponential backoff with random jitter, and
+ * the retries of a provider are bounded by a budget: every call adds the
+ * budget ratio to the budget of its provider and every retry takes one from it.
+ * A node in trouble therefore gets at most that share of extra calls.
+ */
+public class RetryPolicy {
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_INITIAL_BACKOFF = 100;
+	public static final long DEFAULT_MAX_BACKOFF = 5 * 1000;
+	public static final double DEFAULT_BACKOFF_MULTIPLIER = 2.0;
+	public static final double DEFAULT_JITTER = 0.2;
+	public static final double DEFAULT_BUDGET_RATIO = 0.2;
+	public static final int DEFAULT_MIN_BUDGET = 10;
+
+	private final int maxAttempts;
+	private final long initialBackoff;
+	private final long maxBackoff;
+	private final double backoffMultiplier;
+	private final double jitter;
+	private final double budgetRatio;
+	private final int minBudget;
+
+	private RetryPolicy(Builder builder) {
+		this.maxAttempts = builder.maxAttempts;
+		this.initialBackoff = builder.initialBackoff;
+		this.maxBackoff = builder.maxBackoff;
+		this.backoffMultiplier = builder.backoffMultiplier;
+		this.jitter = builder.jitter;
+		this.budgetRatio = builder.budgetRatio;
+		this.minBudget = builder.minBudget;
+	}
+
+	/**
+	 * The policy sending every call once.
+	 */
+	public static RetryPolicy none() {
+		return new Builder().maxAttempts(1).build();
+	}
+
+	/**
+	 * The maximum number of attempts of a call, including the first one.
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * The delay before the first retry, in milliseconds.
+	 */
+	public long getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	/**
+	 * The maximum delay between two attempts, in milliseconds.
+	 */
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	public double getBackoffMultiplier() {
+		return backoffMultiplier;
+	}
+
+	/**
+	 * The random spread of the delays, as a fraction of the delay.
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * The number of retries each call adds to the budget of its provider.
+	 */
+	public double getBudgetRatio() {
+		return budgetRatio;
+	}
+
+	/**
+	 * The initial retry budget of a provider, before its calls add to it.
+	 */
+	public int getMinBudget() {
+		return minBudget;
+	}
+
+	/**
+	 * Compute the delay before an attempt.
+	 *
+	 * @param attempt the number of the attempt failed, starting from 1
+	 * @param random a random number in [0, 1)
+	 * @return the delay in milliseconds
+	 */
+	public long backoff(int attempt, double random) {
+		double delay = initialBackoff * Math.pow(backoffMultiplier, attempt - 1);
+		delay = Math.min(delay, maxBackoff);
+		delay = delay * (1 + jitter * (2 * random - 1));
+		return (long) Math.max(0, Math.min(delay, maxBackoff));
+	}
+
+	public static final class Builder {
+		int maxAttempts;
+		long initialBackoff;
+		long maxBackoff;
+		double backoffMultiplier;
+		double jitter;
+		double budgetRatio;
+		int minBudget;
+
+		public Builder() {
+			this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+			this.initialBackoff = DEFAULT_INITIAL_BACKOFF;
+			this.maxBackoff = DEFAULT_MAX_BACKOFF;
+			this.backoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+			this.jitter = DEFAULT_JITTER;
+			this.budgetRatio = DEFAULT_BUDGET_RATIO;
+			this.minBudget = DEFAULT_MIN_BUDGET;
+		}
+
+		public Builder maxAttempts(int maxAttempts) {
+			if (maxAttempts < 1)
+				throw new IllegalArgumentException("maxAttempts < 1");
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		public Builder initialBackoff(long initialBackoff) {
+			if (initialBackoff < 0)
+				throw new IllegalArgumentException("initialBackoff < 0");
+			this.initialBackoff = initialBackoff;
+			return this;
+		}
+
+		public Builder maxBackoff(long maxBackoff) {
+			if (maxBackoff < 0)
+				throw new IllegalArgumentException("maxBackoff < 0");
+			this.maxBackoff = maxBackoff;
+			return this;
+		}
+
+		public Builder backoffMultiplier(double backoffMultiplier) {
+			if (backoffMultiplier < 1)
+				throw new IllegalArgumentException("backoffMultiplier < 1");
+			this.backoffMultiplier = backoffMultiplier;
+			return this;
+		}
+
+		public Builder jitter(double jitter) {
+			if (jitter < 0 || jitter >= 1)
+				throw new IllegalArgumentException("jitter must be in [0, 1)");
+			this.jitter = jitter;
+			return this;
+		}
+
+		public Builder budgetRatio(double budgetRatio) {
+			if (budgetRatio < 0)
+				throw new IllegalArgumentException("budgetRatio < 0");
+			this.budgetRatio = budgetRatio;
+			return this;
+		}
+
+		public Builder minBudget(int minBudget) {
+			if (minBudget < 0)
+				throw new IllegalArgumentException("minBudget < 0");
+			this.minBudget = minBudget;
+			return this;
+		}
+
+		public RetryPolicy build() {
+			return new RetryPolicy(this);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.hive.connection.model;
+
+/**
+ * Timeouts of the calls to the node, in milliseconds. A value of 0 means no timeout.
+ */
+public class TimeoutConfig {
+	public static final long DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+	public static final long DEFAULT_READ_TIMEOUT = 30 * 1000;
+	public static final long DEFAULT_WRITE_TIMEOUT = 30 * 1000;
+	public static final long DEFAULT_CALL_TIMEOUT = 0;
+
+	private final long connectTimeout;
+	private final long readTimeout;
+	private final long writeTimeout;
+	private final long callTimeout;
+
+	private TimeoutConfig(Builder builder) {
+		this.connectTimeout = builder.connectTimeout;
+		this.readTimeout = builder.readTimeout;
+		this.writeTimeout = builder.writeTimeout;
+		this.callTimeout = builder.callTimeout;
+	}
+
+	public long getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public long getReadTimeout() {
+		return readTimeout;
+	}
+
+	public long getWriteTimeout() {
+		return writeTimeout;
+	}
+
+	/**
+	 * The timeout of the whole call, including the replay after a token refresh.
+	 */
+	public long getCallTimeout() {
+		return callTimeout;
+	}
+
+	public static final class Builder {
+		long connectTimeout;
+		long readTimeout;
+		long writeTimeout;
+		long callTimeout;
+
+		public Builder() {
+			this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+			this.readTimeout = DEFAULT_READ_TIMEOUT;
+			this.writeTimeout = DEFAULT_WRITE_TIMEOUT;
+			this.callTimeout = DEFAULT_CALL_TIMEOUT;
+		}
+
+		public Builder connectTimeout(long connectTimeout) {
+			this.connectTimeout = checkTimeout(connectTimeout);
+			return this;
+		}
+
+		public Builder readTimeout(long readTimeout) {
+			this.readTimeout = checkTimeout(readTimeout);
+			return this;
+		}
+
+		public Builder writeTimeout(long writeTimeout) {
+			this.writeTimeout = checkTimeout(writeTimeout);
+			return this;
+		}
+
+		public Builder callTimeout(long callTimeout) {
+			this.callTimeout = checkTimeout(callTimeout);
+			return this;
+		}
+
+		private static long checkTimeout(long timeout) {
+			if (timeout < 0)
+				throw new IllegalArgumentException("timeout < 0");
+			return timeout;
+		}
+
+		public TimeoutConfig build() {
+			return new TimeoutConfig(this);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.hive.connection.model;
+
+/**
+ * Pool of the vaults opened by a client, so the vault of an owner DID and
+ * its access token are reused by the next requests instead of being rebuilt.
+ *
+ * The pool keeps at most the given number of vaults and drops the least
+ * recently used one beyond it, as well as the vaults left idle too long.
+ */
+public class VaultPoolConfig {
+	public static final int DEFAULT_MAX_SIZE = 1000;
+	public static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000;
+
+	private final boolean enabled;
+	private final int maxSize;
+	private final long idleTimeout;
+
+	private VaultPoolConfig(Builder builder) {
+		this.enabled = builder.enabled;
+		this.maxSize = builder.maxSize;
+		this.idleTimeout = builder.idleTimeout;
+	}
+
+	/**
+	 * Without the pool, each call to get a vault builds a new one.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * The maximum number of vaults kept by the client.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * The time after which an unused vault is dropped, in milliseconds.
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public static final class Builder {
+		boolean enabled;
+		int maxSize;
+		long idleTimeout;
+
+		public Builder() {
+			this.enabled = true;
+			this.maxSize = DEFAULT_MAX_SIZE;
+			this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		}
+
+		public Builder enabled(boolean enabled) {
+			this.enabled = enabled;
+			return this;
+		}
+
+		public Builder maxSize(int maxSize) {
+			if (maxSize < 1)
+				throw new IllegalArgumentException("maxSize < 1");
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public Builder idleTimeout(long idleTimeout) {
+			if (idleTimeout <= 0)
+				throw new IllegalArgumentException("idleTimeout <= 0");
+			this.idleTimeout = idleTimeout;
+			return this;
+		}
+
+		public VaultPoolConfig build() {
+			return new VaultPoolConfig(this);
+		}
+	}
+}
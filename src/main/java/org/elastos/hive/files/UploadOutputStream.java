@@ -1,20 +1,33 @@
 package org.elastos.hive.files;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-
-import org.elastos.hive.utils.ResponseHelper;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class UploadOutputStream extends OutputStream {
 	private HttpURLConnection connection;
 	private OutputStream originalStream;
+	private CompletableFuture<?> result;
 
+	/**
+	 * @deprecated the uploads go through the shared client, use
+	 *             {@link #UploadOutputStream(OutputStream, CompletableFuture)}
+	 */
+	@Deprecated
 	public UploadOutputStream(HttpURLConnection connection, OutputStream stream) {
 		this.connection = connection;
 		this.originalStream = stream;
 	}
 
+	public UploadOutputStream(OutputStream stream, CompletableFuture<?> result) {
+		this.originalStream = stream;
+		this.result = result;
+	}
+
 	@Override
 	public void write(int b) throws IOException {
 		originalStream.write(b);
@@ -37,12 +50,39 @@ public class UploadOutputStream extends OutputStream {
 
 	@Override
 	public void close() throws IOException {
-		// In order for uploads to complete successfully in chunk mode, we have to read the server response.
-		// This doesn't seem to behave identically on all devices. Some devices work without this. But some devices
-		// don't terminate the api call until the server response is read.
-		//
-		// This close() method on the output stream is the only location where we know user has finished writing his file.
-		ResponseHelper.readConnection(connection);
+		if (connection != null) {
+			// The chunked upload of a connection only completes once its response is read.
+			readConnection();
+			originalStream.close();
+			return;
+		}
+
+		// Closing the stream ends the request body, the upload is done once the node has answered.
 		originalStream.close();
+		try {
+			result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the upload result", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause().getLocalizedMessage(), e.getCause());
+		} catch (CancellationException e) {
+			throw new IOException("The upload has been canceled", e);
+		}
+	}
+
+	private void readConnection() {
+		try {
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+				return;
+
+			byte[] buffer = new byte[1024];
+			try (InputStream in = connection.getInputStream()) {
+				while (in.read(buffer) != -1)
+					;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 }
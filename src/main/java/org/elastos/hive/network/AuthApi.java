@@ -9,9 +9,11 @@ import retrofit2.http.Body;
 import retrofit2.http.POST;
 
 public interface AuthApi {
+	@NonReplayable
 	@POST(Constance.API_PATH + "/did/sign_in")
 	Call<ResponseBody> signIn(@Body RequestBody body);
 
+	@NonReplayable
 	@POST(Constance.API_PATH + "/did/auth")
 	Call<ResponseBody> auth(@Body RequestBody body);
 }
@@ -15,9 +15,11 @@ public interface DatabaseApi {
 	@POST(Constance.API_PATH + "/db/delete_collection")
 	Call<ResponseBody> deleteCollection(@Body RequestBody body);
 
+	@Idempotent(requiresDocumentId = true)
 	@POST(Constance.API_PATH + "/db/insert_one")
 	Call<ResponseBody> insertOne(@Body RequestBody body);
 
+	@Idempotent(requiresDocumentId = true)
 	@POST(Constance.API_PATH + "/db/insert_many")
 	Call<ResponseBody> insertMany(@Body RequestBody body);
 
@@ -33,12 +35,15 @@ public interface DatabaseApi {
 	@POST(Constance.API_PATH + "/db/delete_many")
 	Call<ResponseBody> deleteMany(@Body RequestBody body);
 
+	@Idempotent
 	@POST(Constance.API_PATH + "/db/count_documents")
 	Call<ResponseBody> countDocs(@Body RequestBody body);
 
+	@Idempotent
 	@POST(Constance.API_PATH + "/db/find_one")
 	Call<ResponseBody> findOne(@Body RequestBody body);
 
+	@Idempotent
 	@POST(Constance.API_PATH + "/db/find_many")
 	Call<ResponseBody> findMany(@Body RequestBody body);
 }
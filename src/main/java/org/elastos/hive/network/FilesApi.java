@@ -13,12 +13,14 @@ import retrofit2.http.POST;
 import retrofit2.http.Query;
 
 public interface FilesApi {
+	@Idempotent
 	@GET(Constance.API_PATH + "/files/list/folder")
 	Call<FilesList> files(@Query("path") String filename);
 
 	@GET(Constance.API_PATH + "/files/download")
 	Call<ResponseBody> downloader(@Query("path") String filename);
 
+	@Idempotent
 	@GET(Constance.API_PATH + "/files/properties")
 	Call<FileInfo> getProperties(@Query("path") String filename);
 
@@ -31,6 +33,7 @@ public interface FilesApi {
 	@POST(Constance.API_PATH + "/files/copy")
 	Call<ResponseBody> copy(@Body RequestBody body);
 
+	@Idempotent
 	@GET(Constance.API_PATH + "/files/file/hash")
 	Call<ResponseBody> hash(@Query("path") String filename);
 }
@@ -0,0 +1,24 @@
+package org.elastos.hive.network;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an API call which can be sent again after a transient failure
+ * without changing its effect on the node.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Idempotent {
+	/**
+	 * The call is only idempotent when every document of its body carries a
+	 * client generated "_id", so a second insert fails instead of duplicating.
+	 * It is still only retried when the previous attempt cannot have been
+	 * applied, see {@link org.elastos.hive.connection.Retrier}.
+	 */
+	boolean requiresDocumentId() default false;
+}
@@ -0,0 +1,18 @@
+package org.elastos.hive.network;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an API call that must not be re-issued after the access token has been
+ * refreshed, either because it does not use the access token or because its
+ * request body can only be written once.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NonReplayable {
+}
@@ -0,0 +1,21 @@
+package org.elastos.hive.network;
+
+import org.elastos.hive.Constance;
+
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+
+public interface UploadApi {
+
+	@NonReplayable
+	@POST(Constance.API_PATH + "/files/upload/{path}")
+	Call<ResponseBody> uploadFile(@Path(value = "path", encoded = true) String path, @Body RequestBody body);
+
+	@NonReplayable
+	@POST(Constance.API_PATH + "/scripting/run_script_upload/{transaction_id}")
+	Call<ResponseBody> uploadScriptFile(@Path("transaction_id") String transactionId, @Body RequestBody body);
+}
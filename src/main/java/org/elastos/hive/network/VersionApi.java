@@ -7,9 +7,11 @@ import retrofit2.Call;
 import retrofit2.http.GET;
 
 public interface VersionApi {
+	@Idempotent
 	@GET(Constance.API_PATH + "/hive/version")
 	Call<ResponseBody> getVersion();
 
+	@Idempotent
 	@GET(Constance.API_PATH + "/hive/commithash")
 	Call<ResponseBody> getCommitId();
 }
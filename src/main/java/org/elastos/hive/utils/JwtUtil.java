@@ -10,31 +10,74 @@ import org.elastos.did.jwt.JwtParserBuilder;
 import org.elastos.did.jwt.MalformedJwtException;
 import org.elastos.did.jwt.UnsupportedJwtException;
 
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsing of the JWT tokens exchanged with the nodes.
+ *
+ * The parser is built once and shared, it is thread-safe once built. The
+ * verified tokens are kept in a bounded cache, so asking again for the claims
+ * or the header of a token is a lookup instead of a signature verification.
+ * A cached token is dropped once expired, as the parser would reject it.
+ */
 public class JwtUtil {
+    private static final int CACHE_SIZE = 256;
 
-    public static JwsHeader getHeader(String jwt) {
-        try {
-            JwtParser jwtParser = new JwtParserBuilder().build();
-            Jws<Claims> jws = jwtParser.parseClaimsJws(jwt);
-            return jws.getHeader();
-        } catch (ExpiredJwtException e) {
-            e.printStackTrace();
-        } catch (UnsupportedJwtException e) {
-            e.printStackTrace();
-        } catch (MalformedJwtException e) {
-            e.printStackTrace();
-        } catch (JwsSignatureException e) {
-            e.printStackTrace();
+    private static final Map<String, Jws<Claims>> cache = new LinkedHashMap<String, Jws<Claims>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Jws<Claims>> eldest) {
+            return size() > CACHE_SIZE;
         }
+    };
 
-        return null;
+    private static volatile JwtParser parser;
+
+    public static JwsHeader getHeader(String jwt) {
+        Jws<Claims> jws = parse(jwt);
+        return jws != null ? jws.getHeader() : null;
     }
 
     public static Claims getBody(String jwt) {
+        Jws<Claims> jws = parse(jwt);
+        return jws != null ? jws.getBody() : null;
+    }
+
+    private static JwtParser getParser() {
+        // Built on first use, once the DID backend resolving the signers is set up.
+        if (parser == null) {
+            synchronized (JwtUtil.class) {
+                if (parser == null)
+                    parser = new JwtParserBuilder().build();
+            }
+        }
+        return parser;
+    }
+
+    private static Jws<Claims> parse(String jwt) {
+        Jws<Claims> jws;
+        synchronized (cache) {
+            jws = cache.get(jwt);
+        }
+
+        if (jws != null) {
+            Date expiration = jws.getBody().getExpiration();
+            if (expiration == null || expiration.getTime() > System.currentTimeMillis())
+                return jws;
+
+            synchronized (cache) {
+                cache.remove(jwt);
+            }
+            return null;
+        }
+
         try {
-            JwtParser jwtParser = new JwtParserBuilder().build();
-            Jws<Claims> jws = jwtParser.parseClaimsJws(jwt);
-            return jws.getBody();
+            jws = getParser().parseClaimsJws(jwt);
+            synchronized (cache) {
+                cache.put(jwt, jws);
+            }
+            return jws;
         } catch (ExpiredJwtException e) {
             e.printStackTrace();
         } catch (UnsupportedJwtException e) {
@@ -0,0 +1,196 @@
+package org.elastos.hive;
+
+import org.elastos.did.DIDDocument;
+import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.exception.HiveException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AuthHelperTest {
+	private static final int CALLERS = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final AtomicInteger restores = new AtomicInteger();
+	private final AtomicInteger signIns = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private volatile JSONObject stored = new JSONObject();
+
+	private ExecutorService executor;
+	private AuthHelper helper;
+
+	// Stores the token in memory, the reads wait for the release of the latch.
+	private class BlockingStore implements Persistent {
+		@Override
+		public JSONObject parseFrom() {
+			restores.incrementAndGet();
+			await(release);
+			return stored;
+		}
+
+		@Override
+		public void upateContent(JSONObject conetnt) {
+			stored = conetnt;
+		}
+
+		@Override
+		public void deleteContent() {
+			stored = new JSONObject();
+		}
+	}
+
+	// Counts the sign ins, which fail once the latch is released.
+	private class FailingContext implements HiveContext {
+		private final String dataDir;
+
+		FailingContext(String dataDir) {
+			this.dataDir = dataDir;
+		}
+
+		@Override
+		public String getLocalDataDir() {
+			return dataDir;
+		}
+
+		@Override
+		public DIDDocument getAppInstanceDocument() {
+			signIns.incrementAndGet();
+			await(release);
+			throw new IllegalStateException("No application instance document");
+		}
+
+		@Override
+		public String getAuthorization(String jwtToken) {
+			return null;
+		}
+
+		@Override
+		public Persistent getTokenStore(String ownerDid, String provider) {
+			return new BlockingStore();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static JSONObject validToken(String accessToken) {
+		long expiresAt = System.currentTimeMillis() / 1000 + 3600;
+		return new JSONObject()
+				.put("access_token", accessToken)
+				.put("refresh_token", "")
+				.put("expires_at", expiresAt)
+				.put("token_type", "token")
+				.put("user_did", "did:elastos:user")
+				.put("app_id", "app")
+				.put("app_instance_did", "did:elastos:instance");
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		executor = Executors.newFixedThreadPool(CALLERS);
+		helper = new AuthHelper(new FailingContext(folder.newFolder().getAbsolutePath()),
+				"did:elastos:owner", "http://localhost:1", null,
+				new BaseServiceConfig.Builder().build(), executor);
+	}
+
+	@After
+	public void tearDown() {
+		helper.close();
+		executor.shutdownNow();
+	}
+
+	private List<CompletableFuture<Void>> checkConcurrently() throws InterruptedException {
+		List<CompletableFuture<Void>> calls = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++)
+			calls.add(helper.checkValid());
+
+		// Let every caller reach the pending refresh before it completes.
+		Thread.sleep(200);
+		release.countDown();
+		return calls;
+	}
+
+	@Test
+	public void concurrentCallersRestoreTheTokenOnce() throws Exception {
+		stored = validToken("restored");
+
+		for (CompletableFuture<Void> call : checkConcurrently())
+			call.get(5, TimeUnit.SECONDS);
+
+		assertEquals(1, restores.get());
+		assertEquals(0, signIns.get());
+		assertEquals("restored", helper.getConnectionManager().getAuthToken().getAccessToken());
+	}
+
+	@Test
+	public void concurrentCallersShareAFailedSignIn() throws Exception {
+		for (CompletableFuture<Void> call : checkConcurrently()) {
+			try {
+				call.join();
+				fail("The sign in should have failed");
+			} catch (CompletionException e) {
+				assertTrue(e.getCause() instanceof HiveException);
+			}
+		}
+
+		assertEquals(1, restores.get());
+		assertEquals(1, signIns.get());
+	}
+
+	@Test
+	public void aRejectedStaleTokenReturnsTheCurrentOne() throws Exception {
+		stored = validToken("current");
+		release.countDown();
+		helper.checkValid().get(5, TimeUnit.SECONDS);
+		AuthToken current = helper.getConnectionManager().getAuthToken();
+
+		// A request sent before the token has been renewed.
+		AuthToken stale = new AuthToken("", "stale", System.currentTimeMillis() / 1000 + 3600, "token");
+		assertSame(current, helper.refreshRejectedToken(stale));
+		assertEquals(0, signIns.get());
+	}
+
+	@Test
+	public void aRejectedCurrentTokenSignsInAgain() throws Exception {
+		stored = validToken("current");
+		release.countDown();
+		helper.checkValid().get(5, TimeUnit.SECONDS);
+		AuthToken current = helper.getConnectionManager().getAuthToken();
+		assertNotNull(current);
+
+		try {
+			helper.refreshRejectedToken(current);
+			fail("The sign in should have failed");
+		} catch (IOException e) {
+			assertEquals(1, signIns.get());
+		}
+		assertEquals(1, restores.get());
+	}
+}
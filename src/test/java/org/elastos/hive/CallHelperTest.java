@@ -0,0 +1,229 @@
+package org.elastos.hive;
+
+import org.elastos.did.DIDDocument;
+import org.elastos.hive.connection.CircuitOpenException;
+import org.elastos.hive.connection.ConcurrencyLimiter;
+import org.elastos.hive.connection.ConnectionManager;
+import org.elastos.hive.connection.RequestRejectedException;
+import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.connection.model.CircuitBreakerConfig;
+import org.elastos.hive.connection.model.ConcurrencyLimitConfig;
+import org.elastos.hive.connection.model.HedgingPolicy;
+import org.elastos.hive.connection.model.RetryPolicy;
+import org.elastos.hive.exception.HiveException;
+import org.elastos.hive.exception.ProviderOverloadedException;
+import org.elastos.hive.exception.ProviderUnavailableException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CallHelperTest {
+	private static final MediaType JSON = MediaType.parse("application/json");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MockWebServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.shutdown();
+	}
+
+	private ConnectionManager newConnectionManager(long backoff) {
+		BaseServiceConfig config = new BaseServiceConfig.Builder()
+				.retryPolicy(new RetryPolicy.Builder()
+						.maxAttempts(3)
+						.initialBackoff(backoff)
+						.jitter(0)
+						.build())
+				.build();
+		return new ConnectionManager(server.url("/").toString(), config);
+	}
+
+	private static MockResponse response(int code) {
+		return new MockResponse()
+				.setResponseCode(code)
+				.setHeader("Content-Type", "application/json")
+				.setBody("{}");
+	}
+
+	private static RequestBody body() {
+		return RequestBody.create(JSON, "{}");
+	}
+
+	@Test
+	public void retriesEnqueuedCallsFromTheTimer() throws Exception {
+		server.enqueue(response(503));
+		server.enqueue(response(504));
+		server.enqueue(response(200));
+
+		ConnectionManager connectionManager = newConnectionManager(10);
+		int code = CallHelper.enqueue(connectionManager.getDatabaseApi().findOne(body()),
+				response -> response.code(), connectionManager).get(5, TimeUnit.SECONDS);
+
+		assertEquals(200, code);
+		assertEquals(3, server.getRequestCount());
+		// One retrier per provider, not one per call.
+		assertSame(connectionManager.getRetrier(), connectionManager.getRetrier());
+	}
+
+	@Test
+	public void doesNotRetryNonIdempotentEnqueuedCalls() throws Exception {
+		server.enqueue(response(503));
+
+		ConnectionManager connectionManager = newConnectionManager(10);
+		int code = CallHelper.enqueue(connectionManager.getDatabaseApi().updateOne(body()),
+				response -> response.code(), connectionManager).get(5, TimeUnit.SECONDS);
+
+		assertEquals(503, code);
+		assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void cancelingStopsThePendingRetry() throws Exception {
+		server.enqueue(response(503));
+		server.enqueue(response(200));
+
+		ConnectionManager connectionManager = newConnectionManager(500);
+		CompletableFuture<Integer> future = CallHelper.enqueue(connectionManager.getDatabaseApi().findOne(body()),
+				response -> response.code(), connectionManager);
+		server.takeRequest(5, TimeUnit.SECONDS);
+		Thread.sleep(100);
+		future.cancel(true);
+
+		assertNull(server.takeRequest(1, TimeUnit.SECONDS));
+		assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void hedgeIsCanceledWhenThePrimaryWins() throws Exception {
+		BaseServiceConfig config = new BaseServiceConfig.Builder()
+				.hedgingPolicy(new HedgingPolicy.Builder()
+						.enabled(true)
+						.minSamples(1)
+						.minDelay(100)
+						.build())
+				.concurrencyLimitConfig(new ConcurrencyLimitConfig.Builder()
+						.minLimit(2)
+						.initialLimit(2)
+						.maxLimit(2)
+						.build())
+				.build();
+		ConnectionManager connectionManager = new ConnectionManager(server.url("/").toString(), config);
+
+		// A first read sets the hedge delay.
+		server.enqueue(response(200));
+		CallHelper.enqueueHedged(connectionManager.getDatabaseApi().findOne(body()),
+				response -> response.code(), connectionManager).get(5, TimeUnit.SECONDS);
+
+		server.enqueue(response(200).setHeadersDelay(300, TimeUnit.MILLISECONDS));
+		server.enqueue(response(200).setHeadersDelay(2, TimeUnit.SECONDS));
+		int code = CallHelper.enqueueHedged(connectionManager.getDatabaseApi().findOne(body()),
+				response -> response.code(), connectionManager).get(5, TimeUnit.SECONDS);
+		assertEquals(200, code);
+		assertEquals(3, server.getRequestCount());
+
+		// The hedge gave its permit back when canceled, both permits are free again.
+		ConcurrencyLimiter limiter = connectionManager.getConcurrencyLimiter();
+		Thread.sleep(100);
+		assertTrue(limiter.acquire(connectionManager).isDone());
+		assertTrue(limiter.acquire(connectionManager).isDone());
+		limiter.releaseIgnored();
+		limiter.releaseIgnored();
+	}
+
+	@Test
+	public void mapsTheSheddingFailuresWhereverTheyAre() {
+		HiveException unavailable = CallHelper.toHiveException(
+				new CompletionException(new CircuitOpenException("open")));
+		assertTrue(unavailable instanceof ProviderUnavailableException);
+		assertTrue(unavailable.getCause() instanceof CircuitOpenException);
+
+		HiveException overloaded = CallHelper.toHiveException(
+				new IOException("replay failed", new RequestRejectedException("shed")));
+		assertTrue(overloaded instanceof ProviderOverloadedException);
+
+		IllegalStateException other = new IllegalStateException("other");
+		HiveException failure = CallHelper.toHiveException(other);
+		assertEquals(HiveException.class, failure.getClass());
+		assertSame(other, failure.getCause());
+	}
+
+	@Test
+	public void anOpenCircuitFailsExecutedCallsAsUnavailable() throws Exception {
+		server.enqueue(response(500));
+		server.enqueue(response(500));
+
+		BaseServiceConfig config = new BaseServiceConfig.Builder()
+				.retryPolicy(new RetryPolicy.Builder().maxAttempts(1).build())
+				.circuitBreakerConfig(new CircuitBreakerConfig.Builder()
+						.windowSize(2)
+						.minimumCalls(2)
+						.openDuration(60 * 1000)
+						.build())
+				.build();
+		String dataDir = folder.newFolder().getAbsolutePath();
+		HiveContext context = new HiveContext() {
+			@Override
+			public String getLocalDataDir() {
+				return dataDir;
+			}
+
+			@Override
+			public DIDDocument getAppInstanceDocument() {
+				return null;
+			}
+
+			@Override
+			public String getAuthorization(String jwtToken) {
+				return null;
+			}
+		};
+		AuthHelper authHelper = new AuthHelper(context, "did:elastos:owner", server.url("/").toString(), null,
+				config, Runnable::run);
+		Version version = new VersionImpl(authHelper);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				version.getVersion().get(5, TimeUnit.SECONDS);
+				fail("The node failed");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof HiveException);
+			}
+		}
+
+		try {
+			version.getVersion().get(5, TimeUnit.SECONDS);
+			fail("The circuit is open");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ProviderUnavailableException);
+		}
+		assertEquals(2, server.getRequestCount());
+	}
+}
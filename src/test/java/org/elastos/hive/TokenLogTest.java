@@ -0,0 +1,114 @@
+package org.elastos.hive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TokenLogTest {
+	private static final String KEY = "did:elastos:owner;https://node";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File logFile(File dir) {
+		return new File(dir, "tokens.log");
+	}
+
+	@Test
+	public void reloadsTheLiveEntries() throws Exception {
+		File dir = folder.newFolder();
+		TokenLog log = new TokenLog(dir);
+		log.put("a", "1");
+		log.put("b", "2");
+		log.put("a", "3");
+		log.remove("b");
+		log.put("c", "4");
+		log.sync();
+
+		TokenLog reopened = new TokenLog(dir);
+		assertEquals("3", reopened.get("a"));
+		assertNull(reopened.get("b"));
+		assertEquals("4", reopened.get("c"));
+	}
+
+	@Test
+	public void keepsTheLastValueWrittenByACompaction() throws Exception {
+		File dir = folder.newFolder();
+		TokenLog log = new TokenLog(dir);
+		// The 256th record triggers the compaction.
+		for (int i = 0; i < 256; i++)
+			log.put(KEY, "v" + i);
+		log.sync();
+
+		assertEquals("v255", new TokenLog(dir).get(KEY));
+	}
+
+	@Test
+	public void keepsTheRemovalWrittenByACompaction() throws Exception {
+		File dir = folder.newFolder();
+		TokenLog log = new TokenLog(dir);
+		for (int i = 0; i < 255; i++)
+			log.put(KEY, "v" + i);
+		// The tombstone is the 256th record and triggers the compaction.
+		log.remove(KEY);
+		log.sync();
+
+		assertNull(new TokenLog(dir).get(KEY));
+	}
+
+	@Test
+	public void compactionDropsTheOutdatedRecords() throws Exception {
+		File dir = folder.newFolder();
+		TokenLog log = new TokenLog(dir);
+		for (int i = 0; i < 1000; i++)
+			log.put("key" + (i % 4), "v" + i);
+		log.sync();
+
+		long lines = Files.readAllLines(logFile(dir).toPath(), StandardCharsets.UTF_8).size();
+		assertTrue(lines < 256);
+
+		TokenLog reopened = new TokenLog(dir);
+		for (int k = 0; k < 4; k++)
+			assertEquals("v" + (996 + k), reopened.get("key" + k));
+	}
+
+	@Test
+	public void skipsALineCutByACrash() throws Exception {
+		File dir = folder.newFolder();
+		TokenLog log = new TokenLog(dir);
+		log.put("a", "1");
+		log.sync();
+		Files.write(logFile(dir).toPath(), "{\"key\":\"b\",\"val".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+		TokenLog reopened = new TokenLog(dir);
+		assertEquals("1", reopened.get("a"));
+		assertNull(reopened.get("b"));
+		reopened.put("c", "2");
+		reopened.sync();
+		assertEquals("2", new TokenLog(dir).get("c"));
+	}
+
+	@Test
+	public void importsTheTokenFilesOfPreviousVersions() throws Exception {
+		File dir = folder.newFolder();
+		String name = new String(new char[64]).replace('\0', 'a');
+		File tokenFile = new File(dir, name);
+		Files.write(tokenFile.toPath(), "{\"access_token\":\"token\"}".getBytes(StandardCharsets.UTF_8));
+
+		TokenLog log = new TokenLog(dir);
+		assertTrue(log.get(name).contains("\"token\""));
+		assertFalse(tokenFile.exists());
+		assertTrue(new TokenLog(dir).get(name).contains("\"token\""));
+	}
+}
@@ -0,0 +1,159 @@
+package org.elastos.hive;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenWriterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class CountingStore implements Persistent {
+		final List<String> writes = new ArrayList<>();
+		final CountDownLatch flushed = new CountDownLatch(1);
+		int deletes;
+		int flushes;
+
+		@Override
+		public synchronized JSONObject parseFrom() {
+			return new JSONObject();
+		}
+
+		@Override
+		public synchronized void upateContent(JSONObject conetnt) {
+			writes.add(conetnt.getString("token"));
+		}
+
+		@Override
+		public synchronized void deleteContent() {
+			deletes++;
+		}
+
+		@Override
+		public synchronized void flush() {
+			flushes++;
+			flushed.countDown();
+		}
+	}
+
+	private static JSONObject token(String value) {
+		return new JSONObject().put("token", value);
+	}
+
+	@Test
+	public void writesOnlyTheLastUpdateOfAStore() {
+		CountingStore store = new CountingStore();
+		// Holding the flush lock keeps a scheduled flush from splitting the batch.
+		synchronized (TokenWriter.class) {
+			TokenWriter.submit(store, token("a"));
+			TokenWriter.submit(store, token("b"));
+			TokenWriter.submit(store, token("c"));
+		}
+		TokenWriter.flush();
+
+		synchronized (store) {
+			assertEquals(1, store.writes.size());
+			assertEquals("c", store.writes.get(0));
+			assertEquals(0, store.deletes);
+			assertEquals(1, store.flushes);
+		}
+	}
+
+	@Test
+	public void aRemovalReplacesThePendingUpdate() {
+		CountingStore store = new CountingStore();
+		synchronized (TokenWriter.class) {
+			TokenWriter.submit(store, token("a"));
+			TokenWriter.submit(store, null);
+		}
+		TokenWriter.flush();
+
+		synchronized (store) {
+			assertTrue(store.writes.isEmpty());
+			assertEquals(1, store.deletes);
+			assertEquals(1, store.flushes);
+		}
+	}
+
+	@Test
+	public void flushesEachStoreOfABatchOnce() {
+		CountingStore first = new CountingStore();
+		CountingStore second = new CountingStore();
+		synchronized (TokenWriter.class) {
+			TokenWriter.submit(first, token("a"));
+			TokenWriter.submit(second, token("b"));
+			TokenWriter.submit(first, token("c"));
+		}
+		TokenWriter.flush();
+
+		synchronized (first) {
+			assertEquals(1, first.writes.size());
+			assertEquals("c", first.writes.get(0));
+			assertEquals(1, first.flushes);
+		}
+		synchronized (second) {
+			assertEquals(1, second.writes.size());
+			assertEquals("b", second.writes.get(0));
+			assertEquals(1, second.flushes);
+		}
+	}
+
+	@Test
+	public void writesThePendingUpdatesInBackground() throws Exception {
+		CountingStore store = new CountingStore();
+		synchronized (TokenWriter.class) {
+			TokenWriter.submit(store, token("a"));
+			TokenWriter.submit(store, token("b"));
+		}
+
+		assertTrue(store.flushed.await(5, TimeUnit.SECONDS));
+		synchronized (store) {
+			assertEquals(1, store.writes.size());
+			assertEquals("b", store.writes.get(0));
+			assertEquals(1, store.flushes);
+		}
+	}
+
+	@Test
+	public void theStoresOfATokenShareTheirPendingUpdate() throws Exception {
+		String dir = folder.newFolder().getAbsolutePath();
+		// A vault opened again while the updates of the previous one are pending.
+		Persistent previous = new IndexedAuthInfoStore("did:elastos:owner", "http://provider", dir);
+		Persistent current = new IndexedAuthInfoStore("did:elastos:owner", "http://provider", dir);
+		synchronized (TokenWriter.class) {
+			TokenWriter.submit(previous, token("old"));
+			TokenWriter.submit(current, token("stale"));
+			TokenWriter.submit(previous, token("new"));
+			assertEquals("new", TokenWriter.read(new IndexedAuthInfoStore("did:elastos:owner", "http://provider", dir))
+					.getString("token"));
+		}
+		TokenWriter.flush();
+
+		assertEquals("new", current.parseFrom().getString("token"));
+		assertEquals("new", TokenWriter.read(previous).getString("token"));
+	}
+
+	@Test
+	public void readsAPendingRemoval() throws Exception {
+		Persistent store = new IndexedAuthInfoStore("did:elastos:owner", "http://provider",
+				folder.newFolder().getAbsolutePath());
+		store.upateContent(token("stored"));
+		synchronized (TokenWriter.class) {
+			TokenWriter.submit(store, null);
+			assertFalse(TokenWriter.read(store).has("token"));
+		}
+		TokenWriter.flush();
+
+		assertFalse(store.parseFrom().has("token"));
+	}
+}
@@ -0,0 +1,119 @@
+package org.elastos.hive.connection;
+
+import org.elastos.hive.AuthToken;
+import org.elastos.hive.network.DatabaseApi;
+import org.elastos.hive.network.UploadApi;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+import static org.junit.Assert.assertEquals;
+
+public class AuthRetryInterceptorTest {
+	private static final MediaType JSON = MediaType.parse("application/json");
+
+	private MockWebServer server;
+	private final AtomicReference<AuthToken> token = new AtomicReference<>(newToken("first"));
+	private final AtomicInteger refreshes = new AtomicInteger();
+	private Retrofit retrofit;
+
+	private static AuthToken newToken(String accessToken) {
+		return new AuthToken("", accessToken, System.currentTimeMillis() / 1000 + 3600, "token");
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+
+		AuthTokenRefresher refresher = rejected -> {
+			refreshes.incrementAndGet();
+			token.compareAndSet(rejected, newToken("second"));
+			return token.get();
+		};
+		OkHttpClient client = new OkHttpClient.Builder()
+				.addInterceptor(new AuthRetryInterceptor(token::get, refresher))
+				.addInterceptor(new HeaderInterceptor(null, token::get))
+				.build();
+		retrofit = BaseServiceUtil.createRetrofit(server.url("/").toString(), client);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.shutdown();
+	}
+
+	private static RequestBody body(String json) {
+		return RequestBody.create(JSON, json);
+	}
+
+	@Test
+	public void replaysOnceWithTheRefreshedToken() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(401));
+		server.enqueue(new MockResponse().setBody("{}"));
+
+		Response<ResponseBody> response = retrofit.create(DatabaseApi.class).findOne(body("{}")).execute();
+		assertEquals(200, response.code());
+		assertEquals(1, refreshes.get());
+		assertEquals(2, server.getRequestCount());
+
+		RecordedRequest rejected = server.takeRequest();
+		RecordedRequest replayed = server.takeRequest();
+		assertEquals("token first", rejected.getHeader("Authorization"));
+		assertEquals("token second", replayed.getHeader("Authorization"));
+	}
+
+	@Test
+	public void doesNotReplayASecondTime() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(401));
+		server.enqueue(new MockResponse().setResponseCode(401));
+
+		Response<ResponseBody> response = retrofit.create(DatabaseApi.class).findOne(body("{}")).execute();
+		assertEquals(401, response.code());
+		assertEquals(1, refreshes.get());
+		assertEquals(2, server.getRequestCount());
+	}
+
+	@Test
+	public void doesNotReplayWithoutANewToken() throws Exception {
+		AuthToken sent = token.get();
+		OkHttpClient client = new OkHttpClient.Builder()
+				.addInterceptor(new AuthRetryInterceptor(token::get, rejected -> {
+					refreshes.incrementAndGet();
+					return sent;
+				}))
+				.build();
+		server.enqueue(new MockResponse().setResponseCode(401));
+
+		Response<ResponseBody> response = BaseServiceUtil.createRetrofit(server.url("/").toString(), client)
+				.create(DatabaseApi.class).findOne(body("{}")).execute();
+		assertEquals(401, response.code());
+		assertEquals(1, refreshes.get());
+		assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void doesNotReplayNonReplayableCalls() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(401));
+
+		Response<ResponseBody> response = retrofit.create(UploadApi.class)
+				.uploadFile("a/b.txt", body("content")).execute();
+		assertEquals(401, response.code());
+		assertEquals(0, refreshes.get());
+		assertEquals(1, server.getRequestCount());
+		assertEquals("token first", server.takeRequest().getHeader("Authorization"));
+	}
+}
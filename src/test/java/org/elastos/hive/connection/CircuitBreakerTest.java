@@ -0,0 +1,144 @@
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.CircuitBreakerConfig;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+	private static final long OPEN_DURATION = 100;
+
+	private static CircuitBreaker newBreaker() {
+		return new CircuitBreaker(new CircuitBreakerConfig.Builder()
+				.failureRateThreshold(0.5)
+				.windowSize(10)
+				.minimumCalls(4)
+				.openDuration(OPEN_DURATION)
+				.halfOpenCalls(2)
+				.build());
+	}
+
+	private static void record(CircuitBreaker breaker, boolean success) throws CircuitOpenException {
+		breaker.onResult(breaker.acquire(), success);
+	}
+
+	@Test
+	public void staysClosedBelowTheMinimumCalls() throws Exception {
+		CircuitBreaker breaker = newBreaker();
+
+		for (int i = 0; i < 3; i++)
+			record(breaker, false);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void opensAtTheFailureRate() throws Exception {
+		CircuitBreaker breaker = newBreaker();
+
+		record(breaker, true);
+		record(breaker, false);
+		record(breaker, true);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		record(breaker, false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		assertRejected(breaker);
+	}
+
+	@Test
+	public void closesWhenTheProbesSucceed() throws Exception {
+		CircuitBreaker breaker = open();
+
+		Thread.sleep(OPEN_DURATION + 20);
+		assertTrue(breaker.acquire());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.acquire());
+		// No more probes than configured.
+		assertRejected(breaker);
+
+		breaker.onResult(true, true);
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		breaker.onResult(true, true);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertFalse(breaker.acquire());
+	}
+
+	@Test
+	public void reopensWhenAProbeFails() throws Exception {
+		CircuitBreaker breaker = open();
+
+		Thread.sleep(OPEN_DURATION + 20);
+		breaker.onResult(breaker.acquire(), false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertRejected(breaker);
+	}
+
+	@Test
+	public void ignoredProbeGivesItsSlotBack() throws Exception {
+		CircuitBreaker breaker = open();
+
+		Thread.sleep(OPEN_DURATION + 20);
+		boolean probe = breaker.acquire();
+		breaker.acquire();
+		breaker.onIgnored(probe);
+		assertTrue(breaker.acquire());
+	}
+
+	@Test
+	public void interceptorShedsCallsWhileOpen() throws Exception {
+		MockWebServer server = new MockWebServer();
+		for (int i = 0; i < 4; i++)
+			server.enqueue(new MockResponse().setResponseCode(500));
+		server.start();
+		try {
+			CircuitBreaker breaker = newBreaker();
+			OkHttpClient client = new OkHttpClient.Builder()
+					.addInterceptor(new CircuitBreakerInterceptor(breaker))
+					.build();
+			Request request = new Request.Builder().url(server.url("/")).build();
+
+			for (int i = 0; i < 4; i++) {
+				try (Response response = client.newCall(request).execute()) {
+					assertEquals(500, response.code());
+				}
+			}
+			assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+			try {
+				client.newCall(request).execute();
+				fail("The call should have been shed");
+			} catch (CircuitOpenException e) {
+				// Expected
+			}
+			assertEquals(4, server.getRequestCount());
+		} finally {
+			server.shutdown();
+		}
+	}
+
+	private static CircuitBreaker open() throws CircuitOpenException {
+		CircuitBreaker breaker = newBreaker();
+		for (int i = 0; i < 4; i++)
+			record(breaker, false);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		return breaker;
+	}
+
+	private static void assertRejected(CircuitBreaker breaker) {
+		try {
+			breaker.acquire();
+			fail("The call should have been rejected");
+		} catch (CircuitOpenException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.ConcurrencyLimitConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimiterTest {
+	private static final Object VAULT_A = "vault-a";
+	private static final Object VAULT_B = "vault-b";
+
+	private static ConcurrencyLimiter newLimiter(int limit, int queueSize, long queueTimeout) {
+		return new ConcurrencyLimiter(new ConcurrencyLimitConfig.Builder()
+				.minLimit(1)
+				.initialLimit(limit)
+				.maxLimit(limit * 4)
+				.queueSize(queueSize)
+				.queueTimeout(queueTimeout)
+				.build());
+	}
+
+	@Test
+	public void queuesCallsOverTheLimit() throws Exception {
+		ConcurrencyLimiter limiter = newLimiter(2, 10, 10000);
+
+		assertTrue(limiter.acquire(VAULT_A).isDone());
+		assertTrue(limiter.acquire(VAULT_A).isDone());
+		CompletableFuture<Void> waiting = limiter.acquire(VAULT_A);
+		assertFalse(waiting.isDone());
+
+		limiter.releaseIgnored();
+		waiting.get(1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void rejectsWhenTheQueueIsFull() {
+		ConcurrencyLimiter limiter = newLimiter(1, 1, 10000);
+
+		limiter.acquire(VAULT_A);
+		limiter.acquire(VAULT_A);
+		assertRejected(limiter.acquire(VAULT_A));
+	}
+
+	@Test
+	public void rejectsWhenTheWaitTimesOut() {
+		ConcurrencyLimiter limiter = newLimiter(1, 10, 50);
+
+		limiter.acquire(VAULT_A);
+		CompletableFuture<Void> waiting = limiter.acquire(VAULT_A);
+		assertRejected(waiting);
+
+		// The timed out call left the queue, the next one is admitted on release.
+		CompletableFuture<Void> next = limiter.acquire(VAULT_B);
+		limiter.releaseIgnored();
+		assertTrue(next.isDone());
+		assertFalse(next.isCompletedExceptionally());
+	}
+
+	@Test
+	public void servesTheVaultsInTurn() {
+		ConcurrencyLimiter limiter = newLimiter(1, 10, 10000);
+
+		limiter.acquire(VAULT_A);
+		CompletableFuture<Void> a1 = limiter.acquire(VAULT_A);
+		CompletableFuture<Void> a2 = limiter.acquire(VAULT_A);
+		CompletableFuture<Void> b1 = limiter.acquire(VAULT_B);
+
+		limiter.releaseIgnored();
+		assertTrue(a1.isDone());
+		limiter.releaseIgnored();
+		assertTrue(b1.isDone());
+		assertFalse(a2.isDone());
+		limiter.releaseIgnored();
+		assertTrue(a2.isDone());
+	}
+
+	@Test
+	public void canceledWaiterLeavesTheQueue() {
+		ConcurrencyLimiter limiter = newLimiter(1, 1, 10000);
+
+		limiter.acquire(VAULT_A);
+		CompletableFuture<Void> canceled = limiter.acquire(VAULT_A);
+		limiter.cancel(canceled);
+		assertTrue(canceled.isCancelled());
+
+		// The queue has room again, and the permit goes to the next waiter.
+		CompletableFuture<Void> next = limiter.acquire(VAULT_A);
+		assertFalse(next.isCompletedExceptionally());
+		limiter.releaseIgnored();
+		assertTrue(next.isDone());
+	}
+
+	@Test
+	public void cancelingAGrantedPermitGivesItBack() {
+		ConcurrencyLimiter limiter = newLimiter(1, 10, 10000);
+
+		CompletableFuture<Void> granted = limiter.acquire(VAULT_A);
+		limiter.cancel(granted);
+		assertTrue(limiter.acquire(VAULT_A).isDone());
+	}
+
+	@Test
+	public void droppedCallsShrinkTheLimit() {
+		ConcurrencyLimiter limiter = newLimiter(8, 10, 10000);
+
+		limiter.acquire(VAULT_A);
+		limiter.releaseIgnored();
+		assertEquals(8, limiter.getLimit());
+
+		limiter.acquire(VAULT_A);
+		limiter.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+		assertTrue(limiter.getLimit() < 8);
+	}
+
+	@Test
+	public void canceledCallDoesNotShrinkTheLimit() throws Exception {
+		MockWebServer server = new MockWebServer();
+		server.enqueue(new MockResponse().setBody("{}").setHeadersDelay(2, TimeUnit.SECONDS));
+		server.start();
+		try {
+			ConcurrencyLimiter limiter = newLimiter(8, 10, 10000);
+			OkHttpClient client = new OkHttpClient.Builder()
+					.addInterceptor(new ConcurrencyLimitInterceptor(limiter, VAULT_A))
+					.build();
+			Call call = client.newCall(new Request.Builder().url(server.url("/")).build());
+
+			CompletableFuture<Void> done = CompletableFuture.runAsync(() -> {
+				try {
+					call.execute();
+				} catch (IOException e) {
+					// Expected, the call is canceled.
+				}
+			});
+			server.takeRequest(5, TimeUnit.SECONDS);
+			call.cancel();
+			done.get(5, TimeUnit.SECONDS);
+
+			assertEquals(8, limiter.getLimit());
+		} finally {
+			server.shutdown();
+		}
+	}
+
+	private static void assertRejected(CompletableFuture<Void> permit) {
+		try {
+			permit.get(5, TimeUnit.SECONDS);
+			fail("The call should have been rejected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RequestRejectedException);
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+}
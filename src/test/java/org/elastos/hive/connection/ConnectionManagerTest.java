@@ -0,0 +1,69 @@
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class ConnectionManagerTest {
+	private static final BaseServiceConfig CONFIG = new BaseServiceConfig.Builder().build();
+
+	@Test
+	public void theServicesAreNeverMissingDuringAnEndpointSwitch() throws Exception {
+		ConnectionManager connectionManager = new ConnectionManager("http://localhost:1/", CONFIG);
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicInteger missing = new AtomicInteger();
+
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(() -> {
+				while (running.get()) {
+					if (connectionManager.getDatabaseApi() == null || connectionManager.getFileApi() == null)
+						missing.incrementAndGet();
+				}
+			});
+			readers[i].start();
+		}
+
+		for (int i = 0; i < 2000; i++)
+			connectionManager.resetVaultApi("http://localhost:" + (1 + i % 2) + "/", CONFIG);
+
+		running.set(false);
+		for (Thread reader : readers)
+			reader.join();
+		assertEquals(0, missing.get());
+	}
+
+	@Test
+	public void theNextCallsGoToTheNewEndpoint() throws Exception {
+		MockWebServer first = new MockWebServer();
+		MockWebServer second = new MockWebServer();
+		first.start();
+		second.start();
+		try {
+			ConnectionManager connectionManager = new ConnectionManager(first.url("/").toString(), CONFIG);
+			Object previous = connectionManager.getVersionApi();
+			first.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("{}"));
+			connectionManager.getVersionApi().getVersion().execute().body().close();
+
+			connectionManager.resetVaultApi(second.url("/").toString(), CONFIG);
+			assertNotSame(previous, connectionManager.getVersionApi());
+			assertEquals(second.url("/").toString(), connectionManager.getVaultBaseUrl());
+			second.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("{}"));
+			connectionManager.getVersionApi().getVersion().execute().body().close();
+
+			assertEquals(1, first.getRequestCount());
+			assertEquals(1, second.getRequestCount());
+		} finally {
+			first.shutdown();
+			second.shutdown();
+		}
+	}
+}
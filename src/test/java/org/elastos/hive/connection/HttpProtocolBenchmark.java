@@ -0,0 +1,131 @@
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.ApiGroup;
+import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.connection.model.HttpProtocol;
+import org.elastos.hive.network.DatabaseApi;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares HTTP/1.1 with prior-knowledge h2c for a burst of small database
+ * calls against a local node stand-in, reporting the number of connections
+ * opened and the latency percentiles.
+ *
+ * Run with -Dhive.benchmark=true, it is skipped otherwise.
+ */
+public class HttpProtocolBenchmark {
+	private static final int CALLS = 5000;
+	private static final int CONCURRENCY = 64;
+	private static final long NODE_DELAY = 5;
+	private static final String FIND_ONE_RESULT = "{\"_status\":\"OK\",\"items\":{\"author\":\"john doe1\"}}";
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(Boolean.getBoolean("hive.benchmark"));
+	}
+
+	@Test
+	public void http1() throws Exception {
+		run(HttpProtocol.HTTP_1_1, Collections.singletonList(Protocol.HTTP_1_1));
+	}
+
+	@Test
+	public void h2c() throws Exception {
+		run(HttpProtocol.H2C, Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+	}
+
+	private void run(HttpProtocol httpProtocol, List<Protocol> serverProtocols) throws Exception {
+		AtomicInteger connections = new AtomicInteger();
+		MockWebServer server = new MockWebServer();
+		server.setProtocols(serverProtocols);
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if (request.getSequenceNumber() == 0)
+					connections.incrementAndGet();
+				return new MockResponse()
+						.setBody(FIND_ONE_RESULT)
+						.setBodyDelay(NODE_DELAY, TimeUnit.MILLISECONDS);
+			}
+		});
+		server.start();
+
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+		try {
+			String baseUrl = server.url("/").toString();
+			BaseServiceConfig config = new BaseServiceConfig.Builder()
+					.httpProtocol(httpProtocol)
+					.maxIdleConnections(CONCURRENCY)
+					.build();
+			OkHttpClient client = BaseServiceUtil.createClient(baseUrl, config, ApiGroup.DATABASE,
+					() -> null, rejected -> null);
+			DatabaseApi api = BaseServiceUtil.createRetrofit(baseUrl, client).create(DatabaseApi.class);
+
+			// Warm up the connections and the JIT before measuring.
+			measure(api, executor, CONCURRENCY * 4);
+			connections.set(0);
+
+			long start = System.nanoTime();
+			long[] latencies = measure(api, executor, CALLS);
+			long elapsed = System.nanoTime() - start;
+
+			Arrays.sort(latencies);
+			System.out.println(String.format("%s: %d calls in %d ms, %d new connections, p50 %.2f ms, p99 %.2f ms",
+					httpProtocol, CALLS, TimeUnit.NANOSECONDS.toMillis(elapsed), connections.get(),
+					percentile(latencies, 0.50), percentile(latencies, 0.99)));
+		} finally {
+			executor.shutdownNow();
+			server.shutdown();
+		}
+	}
+
+	private long[] measure(DatabaseApi api, ExecutorService executor, int calls) throws Exception {
+		List<Future<Long>> futures = new ArrayList<>(calls);
+		for (int i = 0; i < calls; i++) {
+			futures.add(executor.submit(() -> {
+				RequestBody body = RequestBody.create(MediaType.parse("application/json"),
+						"{\"collection\":\"works\",\"filter\":{\"author\":\"john doe1\"}}");
+				long begin = System.nanoTime();
+				Response<okhttp3.ResponseBody> response = api.findOne(body).execute();
+				response.body().close();
+				long latency = System.nanoTime() - begin;
+				assertEquals(200, response.code());
+				return latency;
+			}));
+		}
+
+		long[] latencies = new long[calls];
+		for (int i = 0; i < calls; i++)
+			latencies[i] = futures.get(i).get();
+		return latencies;
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(index, 0)] / 1e6;
+	}
+}
@@ -0,0 +1,164 @@
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.ApiGroup;
+import org.elastos.hive.connection.model.BaseServiceConfig;
+import org.elastos.hive.network.DatabaseApi;
+import org.elastos.hive.utils.LogUtil;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Compares the OkHttp transport with the JDK HttpClient one for a burst of
+ * small enqueued database calls against a local node stand-in, reporting the
+ * latency percentiles and the peak number of live threads.
+ *
+ * Run with -Dhive.benchmark=true on JDK 11 or later, it is skipped otherwise.
+ */
+public class HttpTransportBenchmark {
+	private static final int CALLS = 5000;
+	private static final int CONCURRENCY = 64;
+	private static final long NODE_DELAY = 5;
+	private static final String FIND_ONE_RESULT = "{\"_status\":\"OK\",\"items\":{\"author\":\"john doe1\"}}";
+
+	private boolean debug;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(Boolean.getBoolean("hive.benchmark"));
+		// The network log would dominate the measures.
+		debug = LogUtil.debug;
+		LogUtil.debug = false;
+	}
+
+	@After
+	public void tearDown() {
+		LogUtil.debug = debug;
+	}
+
+	@Test
+	public void okhttp() throws Exception {
+		run("OkHttp", new OkHttpTransport());
+	}
+
+	@Test
+	public void jdk() throws Exception {
+		HttpTransport transport;
+		try {
+			// Only built by a JDK 11+ toolchain.
+			transport = (HttpTransport) Class.forName("org.elastos.hive.connection.JdkHttpTransport")
+					.getConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			Assume.assumeNoException(e);
+			return;
+		}
+		run("JDK HttpClient", transport);
+	}
+
+	private void run(String name, HttpTransport transport) throws Exception {
+		MockWebServer server = new MockWebServer();
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				return new MockResponse()
+						.setHeader("Content-Type", "application/json")
+						.setBody(FIND_ONE_RESULT)
+						.setBodyDelay(NODE_DELAY, TimeUnit.MILLISECONDS);
+			}
+		});
+		server.start();
+
+		try {
+			String baseUrl = server.url("/").toString();
+			BaseServiceConfig config = new BaseServiceConfig.Builder()
+					.transport(transport)
+					.maxIdleConnections(CONCURRENCY)
+					.build();
+			OkHttpClient client = BaseServiceUtil.createClient(baseUrl, config, ApiGroup.DATABASE,
+					() -> null, rejected -> null);
+			client.dispatcher().setMaxRequestsPerHost(CONCURRENCY);
+			DatabaseApi api = BaseServiceUtil.createRetrofit(baseUrl, client, transport).create(DatabaseApi.class);
+
+			// Warm up the connections and the JIT before measuring.
+			measure(api, CONCURRENCY * 4);
+
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			threads.resetPeakThreadCount();
+			long start = System.nanoTime();
+			long[] latencies = measure(api, CALLS);
+			long elapsed = System.nanoTime() - start;
+
+			Arrays.sort(latencies);
+			System.out.println(String.format("%s: %d calls in %d ms, p50 %.2f ms, p99 %.2f ms, %d peak threads",
+					name, CALLS, TimeUnit.NANOSECONDS.toMillis(elapsed),
+					percentile(latencies, 0.50), percentile(latencies, 0.99), threads.getPeakThreadCount()));
+		} finally {
+			server.shutdown();
+		}
+	}
+
+	private long[] measure(DatabaseApi api, int calls) throws Exception {
+		Semaphore inFlight = new Semaphore(CONCURRENCY);
+		long[] latencies = new long[calls];
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[calls];
+
+		for (int i = 0; i < calls; i++) {
+			int index = i;
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			futures[i] = future;
+
+			inFlight.acquire();
+			RequestBody body = RequestBody.create(MediaType.parse("application/json"),
+					"{\"collection\":\"works\",\"filter\":{\"author\":\"john doe1\"}}");
+			long begin = System.nanoTime();
+			api.findOne(body).enqueue(new Callback<ResponseBody>() {
+				@Override
+				public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+					latencies[index] = System.nanoTime() - begin;
+					inFlight.release();
+					if (response.code() == 200) {
+						response.body().close();
+						future.complete(null);
+					} else {
+						future.completeExceptionally(new IOException("HTTP " + response.code()));
+					}
+				}
+
+				@Override
+				public void onFailure(Call<ResponseBody> call, Throwable t) {
+					inFlight.release();
+					future.completeExceptionally(t);
+				}
+			});
+		}
+
+		CompletableFuture.allOf(futures).get();
+		return latencies;
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(index, 0)] / 1e6;
+	}
+}
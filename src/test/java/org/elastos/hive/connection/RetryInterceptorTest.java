@@ -0,0 +1,172 @@
+package org.elastos.hive.connection;
+
+import org.elastos.hive.connection.model.RetryPolicy;
+import org.elastos.hive.network.DatabaseApi;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryInterceptorTest {
+	private static final MediaType JSON = MediaType.parse("application/json");
+
+	private MockWebServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockWebServer();
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.shutdown();
+	}
+
+	private DatabaseApi newApi(RetryPolicy policy) {
+		OkHttpClient client = new OkHttpClient.Builder()
+				.retryOnConnectionFailure(false)
+				.addInterceptor(new RetryInterceptor(new Retrier(policy, new RetryBudget(policy))))
+				.build();
+		return BaseServiceUtil.createRetrofit(server.url("/").toString(), client).create(DatabaseApi.class);
+	}
+
+	private static RetryPolicy.Builder policy() {
+		return new RetryPolicy.Builder()
+				.maxAttempts(3)
+				.initialBackoff(10)
+				.jitter(0);
+	}
+
+	private static RequestBody body(String json) {
+		return RequestBody.create(JSON, json);
+	}
+
+	@Test
+	public void retriesIdempotentCallsOnTransientErrors() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+		server.enqueue(new MockResponse().setBody("{}"));
+
+		Response<ResponseBody> response = newApi(policy().build()).findOne(body("{}")).execute();
+		assertEquals(200, response.code());
+		assertEquals(3, server.getRequestCount());
+	}
+
+	@Test
+	public void stopsAfterTheMaximumAttempts() throws Exception {
+		for (int i = 0; i < 3; i++)
+			server.enqueue(new MockResponse().setResponseCode(502));
+
+		Response<ResponseBody> response = newApi(policy().build()).findOne(body("{}")).execute();
+		assertEquals(502, response.code());
+		assertEquals(3, server.getRequestCount());
+	}
+
+	@Test
+	public void doesNotRetryOtherErrors() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(500));
+
+		Response<ResponseBody> response = newApi(policy().build()).findOne(body("{}")).execute();
+		assertEquals(500, response.code());
+		assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void doesNotRetryNonIdempotentCalls() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(503));
+
+		Response<ResponseBody> response = newApi(policy().build()).updateOne(body("{}")).execute();
+		assertEquals(503, response.code());
+		assertEquals(1, server.getRequestCount());
+	}
+
+	@Test
+	public void retriesInsertsOnlyWithDocumentIds() throws Exception {
+		DatabaseApi api = newApi(policy().build());
+
+		server.enqueue(new MockResponse().setResponseCode(503));
+		server.enqueue(new MockResponse().setBody("{}"));
+		assertEquals(200, api.insertOne(body("{\"document\":{\"_id\":\"1\",\"a\":1}}")).execute().code());
+		assertEquals(2, server.getRequestCount());
+
+		server.enqueue(new MockResponse().setResponseCode(503));
+		assertEquals(503, api.insertOne(body("{\"document\":{\"a\":1}}")).execute().code());
+		assertEquals(3, server.getRequestCount());
+
+		server.enqueue(new MockResponse().setResponseCode(503));
+		assertEquals(503, api.insertMany(body("{\"document\":[{\"_id\":\"1\"},{\"a\":1}]}")).execute().code());
+		assertEquals(4, server.getRequestCount());
+	}
+
+	@Test
+	public void doesNotRetryAnInsertWhoseResponseIsLost() throws Exception {
+		DatabaseApi api = newApi(policy().build());
+		String document = "{\"document\":{\"_id\":\"1\",\"a\":1}}";
+
+		// The node may have inserted the document before the connection dropped.
+		server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+		try {
+			api.insertOne(body(document)).execute();
+			fail("The response has been lost");
+		} catch (IOException e) {
+			assertEquals(1, server.getRequestCount());
+		}
+
+		// A gateway error says nothing about the node either.
+		server.enqueue(new MockResponse().setResponseCode(504));
+		assertEquals(504, api.insertOne(body(document)).execute().code());
+		assertEquals(2, server.getRequestCount());
+	}
+
+	@Test
+	public void honoursRetryAfter() throws Exception {
+		server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "1"));
+		server.enqueue(new MockResponse().setBody("{}"));
+
+		long start = System.nanoTime();
+		assertEquals(200, newApi(policy().build()).findOne(body("{}")).execute().code());
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+	}
+
+	@Test
+	public void budgetBoundsTheRetries() {
+		RetryPolicy policy = policy().budgetRatio(0.5).minBudget(1).build();
+		RetryBudget budget = new RetryBudget(policy);
+
+		assertTrue(budget.tryWithdraw());
+		assertFalse(budget.tryWithdraw());
+		budget.deposit();
+		assertFalse(budget.tryWithdraw());
+		budget.deposit();
+		assertTrue(budget.tryWithdraw());
+	}
+
+	@Test
+	public void exhaustedBudgetStopsTheRetries() throws Exception {
+		DatabaseApi api = newApi(policy().budgetRatio(0).minBudget(1).build());
+		for (int i = 0; i < 4; i++)
+			server.enqueue(new MockResponse().setResponseCode(503));
+
+		assertEquals(503, api.findOne(body("{}")).execute().code());
+		assertEquals(2, server.getRequestCount());
+		assertEquals(503, api.findOne(body("{}")).execute().code());
+		assertEquals(3, server.getRequestCount());
+	}
+}